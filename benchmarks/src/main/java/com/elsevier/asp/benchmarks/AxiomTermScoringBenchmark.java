@@ -0,0 +1,216 @@
+package com.elsevier.asp.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.lucene.util.FixedBitSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.elsevier.asp.AxiomTermPool;
+import com.elsevier.asp.TermScoreHeap;
+
+/**
+ * Axiomatic reranker term scoring over a synthetic reranking pool: building
+ * the pool inverted index and scoring every pool term against every query
+ * term, with HashSet&lt;Integer&gt; postings and boxed priority queues (as
+ * RerankerFactory used to) versus {@link AxiomTermPool} and
+ * {@link TermScoreHeap}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AxiomTermScoringBenchmark {
+
+	private static final int VOCAB_SIZE = 20000;
+	private static final int TERMS_PER_DOC = 120;
+	private static final int NUM_QUERY_TERMS = 6;
+	private static final int K = 1000;
+	private static final int M = 30;
+	private static final float BETA = 0.4f;
+
+	@Param({"400", "2000", "10000"})
+	public int poolSize;
+
+	private String[][] docTerms;
+	private List<String> queryTerms;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		Random random = new Random(42L);
+		String[] vocab = new String[VOCAB_SIZE];
+		for (int i = 0; i < VOCAB_SIZE; i++) {
+			vocab[i] = randomWord(random);
+		}
+		docTerms = new String[poolSize][];
+		for (int doc = 0; doc < poolSize; doc++) {
+			// zipf-like term distribution, so a few terms are dense and most are rare
+			Set<String> terms = new HashSet<String>();
+			while (terms.size() < TERMS_PER_DOC) {
+				int rank = (int) Math.floor(Math.pow(VOCAB_SIZE, random.nextDouble())) - 1;
+				terms.add(vocab[rank]);
+			}
+			String[] sorted = terms.toArray(new String[terms.size()]);
+			Arrays.sort(sorted);
+			docTerms[doc] = sorted;
+		}
+		queryTerms = new ArrayList<String>();
+		for (int i = 0; i < NUM_QUERY_TERMS; i++) {
+			queryTerms.add(vocab[3 * i + 1]);
+		}
+	}
+
+	private static String randomWord(Random random) {
+		int length = 3 + random.nextInt(8);
+		StringBuilder b = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			b.append((char) ('a' + random.nextInt(26)));
+		}
+		return b.toString();
+	}
+
+	@Benchmark
+	public Map<String,Double> hashSetPostings() {
+		Map<String,Set<Integer>> termInvertedList = new HashMap<String,Set<Integer>>();
+		for (int doc = 0; doc < docTerms.length; doc++) {
+			for (String term : docTerms[doc]) {
+				if (!termInvertedList.containsKey(term)) {
+					termInvertedList.put(term, new HashSet<Integer>());
+				}
+				termInvertedList.get(term).add(doc);
+			}
+		}
+		Set<Integer> allDocIds = new HashSet<Integer>();
+		for (Set<Integer> s : termInvertedList.values()) {
+			allDocIds.addAll(s);
+		}
+		int docIdsCount = allDocIds.size();
+
+		Comparator<Pair<String,Double>> comparator = new Comparator<Pair<String,Double>>() {
+			public int compare(Pair<String,Double> a, Pair<String,Double> b) {
+				int cmp = Double.compare(b.getRight(), a.getRight());
+				return (cmp == 0) ? a.getLeft().compareToIgnoreCase(b.getLeft()) : cmp;
+			}
+		};
+		Map<String,Double> aggTermScores = new HashMap<String,Double>();
+		for (String queryTerm : queryTerms) {
+			if (!termInvertedList.containsKey(queryTerm)) {
+				continue;
+			}
+			PriorityQueue<Pair<String,Double>> termScorePQ = new PriorityQueue<Pair<String,Double>>(comparator);
+			double selfMI = hashSetMutualInformation(termInvertedList.get(queryTerm),
+					termInvertedList.get(queryTerm), docIdsCount);
+			for (Map.Entry<String,Set<Integer>> termEntry : termInvertedList.entrySet()) {
+				double score;
+				if (termEntry.getKey().equals(queryTerm)) {
+					score = 1.0;
+				} else {
+					double crossMI = hashSetMutualInformation(termInvertedList.get(queryTerm),
+							termEntry.getValue(), docIdsCount);
+					score = BETA * crossMI / selfMI;
+				}
+				termScorePQ.add(Pair.of(termEntry.getKey(), score));
+			}
+			for (int i = 0; i < Math.min(termScorePQ.size(), Math.max(M, K)); i++) {
+				Pair<String,Double> termScore = termScorePQ.poll();
+				aggTermScores.put(termScore.getLeft(),
+						aggTermScores.getOrDefault(termScore.getLeft(), 0.0) + termScore.getRight());
+			}
+		}
+		return aggTermScores;
+	}
+
+	@Benchmark
+	public double[] bitSetPostings() {
+		AxiomTermPool.Builder poolBuilder = new AxiomTermPool.Builder(docTerms.length);
+		for (int doc = 0; doc < docTerms.length; doc++) {
+			for (String term : docTerms[doc]) {
+				poolBuilder.add(doc, term);
+			}
+		}
+		AxiomTermPool pool = poolBuilder.build();
+
+		int numTerms = pool.numTerms();
+		int topTerms = Math.min(Math.max(M, K), (numTerms + 1) / 2);
+		double[] aggTermScores = new double[numTerms];
+		for (String queryTerm : queryTerms) {
+			int queryOrd = pool.ordinal(queryTerm);
+			if (queryOrd < 0) {
+				continue;
+			}
+			TermScoreHeap heap = new TermScoreHeap(topTerms);
+			FixedBitSet queryDocs = pool.bitSet(queryOrd);
+			double selfMI = pool.mutualInformation(queryDocs, queryOrd, queryOrd);
+			for (int ord = 0; ord < numTerms; ord++) {
+				double score;
+				if (ord == queryOrd) {
+					score = 1.0;
+				} else {
+					score = BETA * pool.mutualInformation(queryDocs, queryOrd, ord) / selfMI;
+				}
+				heap.offer(ord, score);
+			}
+			double[] scores = new double[heap.size()];
+			int[] ords = heap.drain(scores);
+			for (int i = 0; i < ords.length; i++) {
+				aggTermScores[ords[i]] += scores[i];
+			}
+		}
+		return aggTermScores;
+	}
+
+	private static double hashSetMutualInformation(Set<Integer> docidsX, Set<Integer> docidsY, int totalDocCount) {
+		int x1 = docidsX.size(), y1 = docidsY.size();
+		int x0 = totalDocCount - x1, y0 = totalDocCount - y1;
+		if (x1 == 0 || x0 == 0 || y1 == 0 || y0 == 0) {
+			return 0;
+		}
+		float pX0 = 1.0f * x0 / totalDocCount;
+		float pX1 = 1.0f * x1 / totalDocCount;
+		float pY0 = 1.0f * y0 / totalDocCount;
+		float pY1 = 1.0f * y1 / totalDocCount;
+		Set<Integer> docidsXClone = new HashSet<Integer>(docidsX);
+		docidsXClone.retainAll(docidsY);
+		int numXY11 = docidsXClone.size();
+		int numXY10 = x1 - numXY11;
+		int numXY01 = y1 - numXY11;
+		int numXY00 = totalDocCount - numXY11 - numXY10 - numXY01;
+		float pXY11 = 1.0f * numXY11 / totalDocCount;
+		float pXY10 = 1.0f * numXY10 / totalDocCount;
+		float pXY01 = 1.0f * numXY01 / totalDocCount;
+		float pXY00 = 1.0f * numXY00 / totalDocCount;
+		double m00 = 0, m01 = 0, m10 = 0, m11 = 0;
+		if (pXY00 != 0)
+			m00 = pXY00 * Math.log(pXY00 / (pX0 * pY0));
+		if (pXY01 != 0)
+			m01 = pXY01 * Math.log(pXY01 / (pX0 * pY1));
+		if (pXY10 != 0)
+			m10 = pXY10 * Math.log(pXY10 / (pX1 * pY0));
+		if (pXY11 != 0)
+			m11 = pXY11 * Math.log(pXY11 / (pX1 * pY1));
+		return m00 + m10 + m01 + m11;
+	}
+}
@@ -0,0 +1,171 @@
+package com.elsevier.asp.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.core.CoreContainer;
+
+/**
+ * Embedded Solr core with the /anserini handler over a synthetic paragraph
+ * index. Paragraph text is drawn from a Zipf distributed vocabulary of
+ * lower case words, so that term vectors, document frequencies and the
+ * RM3/Axiom term filters behave much as on real text. The index is kept in
+ * the temporary directory and reused by later runs with the same size and
+ * seed, since every JMH fork would otherwise rebuild it.
+ */
+public class EmbeddedIndex implements AutoCloseable {
+
+	public static final String CORE_NAME = "anserini";
+
+	private static final String[] CONF_FILES = { "solrconfig.xml", "schema.xml", "stopwords.txt", "synonyms.txt" };
+	private static final String COMPLETE_MARKER = "index.complete";
+	// bumped when the fields written to the index change, so older indexes are not reused
+	private static final int INDEX_VERSION = 2;
+	private static final int BATCH_SIZE = 1000;
+
+	private final CoreContainer container;
+	private final EmbeddedSolrServer server;
+	private final Vocabulary vocabulary;
+
+	private EmbeddedIndex(CoreContainer container, Vocabulary vocabulary) {
+		this.container = container;
+		this.server = new EmbeddedSolrServer(container, CORE_NAME);
+		this.vocabulary = vocabulary;
+	}
+
+	/**
+	 * Opens the index of numDocs paragraphs built with the given seed,
+	 * building it first if it does not exist yet.
+	 */
+	public static EmbeddedIndex open(int numDocs, long seed) throws IOException, SolrServerException {
+		Vocabulary vocabulary = new Vocabulary(20000, 1.0);
+		Path home = Paths.get(System.getProperty("java.io.tmpdir"),
+				"anserini-benchmark-v" + INDEX_VERSION + "-" + numDocs + "-" + seed);
+		boolean complete = Files.exists(home.resolve(COMPLETE_MARKER));
+		// configuration is copied again each time, so a reused index runs with the current one
+		createHome(home);
+		EmbeddedIndex index = new EmbeddedIndex(CoreContainer.createAndLoad(home), vocabulary);
+		if (!complete) {
+			index.build(numDocs, new Random(seed));
+			Files.createFile(home.resolve(COMPLETE_MARKER));
+		}
+		return index;
+	}
+
+	public EmbeddedSolrServer getServer() {
+		return server;
+	}
+
+	public CoreContainer getContainer() {
+		return container;
+	}
+
+	public Vocabulary getVocabulary() {
+		return vocabulary;
+	}
+
+	@Override
+	public void close() throws IOException {
+		server.close();
+	}
+
+	private static void createHome(Path home) throws IOException {
+		Path conf = home.resolve(CORE_NAME).resolve("conf");
+		Files.createDirectories(conf);
+		for (String name : CONF_FILES) {
+			try (InputStream in = EmbeddedIndex.class.getResourceAsStream("/" + CORE_NAME + "/conf/" + name)) {
+				Files.copy(in, conf.resolve(name), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		Files.write(home.resolve("solr.xml"), "<solr/>\n".getBytes(StandardCharsets.UTF_8));
+		Files.write(home.resolve(CORE_NAME).resolve("core.properties"),
+				("name=" + CORE_NAME + "\n").getBytes(StandardCharsets.UTF_8));
+	}
+
+	private void build(int numDocs, Random random) throws IOException, SolrServerException {
+		List<SolrInputDocument> batch = new ArrayList<SolrInputDocument>();
+		for (int i = 0; i < numDocs; i++) {
+			String text = vocabulary.text(random, 40 + random.nextInt(120));
+			SolrInputDocument doc = new SolrInputDocument();
+			doc.addField("id", Integer.toString(i));
+			doc.addField("pii", "S" + (i / 20));
+			doc.addField("para_id", "S" + (i / 20) + "-p" + (i % 20));
+			doc.addField("para_text_bm", text);
+			doc.addField("para_text_ql", text);
+			batch.add(doc);
+			if (batch.size() == BATCH_SIZE) {
+				server.add(CORE_NAME, batch);
+				batch.clear();
+			}
+		}
+		if (!batch.isEmpty()) {
+			server.add(CORE_NAME, batch);
+		}
+		server.commit(CORE_NAME);
+	}
+
+	/**
+	 * Words of two or more lower case letters, drawn with probability
+	 * proportional to 1 / rank^exponent.
+	 */
+	public static class Vocabulary {
+
+		private final String[] words;
+		private final double[] cumulative;
+
+		public Vocabulary(int size, double exponent) {
+			words = new String[size];
+			cumulative = new double[size];
+			double sum = 0.0;
+			for (int rank = 0; rank < size; rank++) {
+				words[rank] = word(rank);
+				sum += 1.0 / Math.pow(rank + 1, exponent);
+				cumulative[rank] = sum;
+			}
+			for (int rank = 0; rank < size; rank++) {
+				cumulative[rank] /= sum;
+			}
+		}
+
+		public String word(Random random) {
+			int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+			return words[Math.min((rank < 0) ? -rank - 1 : rank, words.length - 1)];
+		}
+
+		/** word by frequency rank, 0 being the most frequent */
+		public String wordAt(int rank) {
+			return words[rank];
+		}
+
+		public String text(Random random, int length) {
+			StringBuilder text = new StringBuilder();
+			for (int i = 0; i < length; i++) {
+				if (i > 0) {
+					text.append(' ');
+				}
+				text.append(word(random));
+			}
+			return text.toString();
+		}
+
+		private static String word(int rank) {
+			StringBuilder word = new StringBuilder();
+			for (int n = rank + 26; n > 0; n /= 26) {
+				word.append((char) ('a' + n % 26));
+			}
+			return word.toString();
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package com.elsevier.asp.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.elsevier.asp.CompactFeatureVector;
+import com.elsevier.asp.FeatureVector;
+import com.elsevier.asp.TermOrdinals;
+
+/**
+ * RM3 feature vector operations on the HashMap backed FeatureVector versus
+ * CompactFeatureVector. pruneToSize modifies its vector, so the prune
+ * benchmarks build a fresh vector each time; the build benchmarks give the
+ * share of that which is not pruning.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FeatureVectorBenchmark {
+
+	private static final int PRUNED_SIZE = 10;
+	private static final float ORIGINAL_QUERY_WEIGHT = 0.5f;
+
+	@Param({"100", "1000", "10000"})
+	public int numFeatures;
+
+	private String[] terms;
+	private float[] weights;
+
+	private TermOrdinals termOrdinals;
+	private FeatureVector hashVector;
+	private FeatureVector otherHashVector;
+	private CompactFeatureVector compactVector;
+	private CompactFeatureVector otherCompactVector;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		Random random = new Random(42L);
+		terms = new String[numFeatures];
+		weights = new float[numFeatures];
+		for (int i = 0; i < numFeatures; i++) {
+			terms[i] = "term" + i;
+			weights[i] = 1 + random.nextInt(50);
+		}
+		termOrdinals = new TermOrdinals();
+		hashVector = buildHashVector(0);
+		otherHashVector = buildHashVector(numFeatures / 2);
+		compactVector = buildCompactVector(termOrdinals, 0);
+		otherCompactVector = buildCompactVector(termOrdinals, numFeatures / 2);
+	}
+
+	// vectors over the same number of terms, the second one shifted by half the vocabulary
+	private FeatureVector buildHashVector(int offset) {
+		FeatureVector f = new FeatureVector();
+		for (int i = 0; i < numFeatures; i++) {
+			f.addFeatureWeight(terms[(i + offset) % numFeatures], weights[i]);
+		}
+		return f;
+	}
+
+	private CompactFeatureVector buildCompactVector(TermOrdinals ordinals, int offset) {
+		CompactFeatureVector f = new CompactFeatureVector(ordinals);
+		for (int i = 0; i < numFeatures; i++) {
+			f.addFeatureWeight(terms[(i + offset) % numFeatures], weights[i]);
+		}
+		return f;
+	}
+
+	@Benchmark
+	public FeatureVector buildHash() {
+		return buildHashVector(0);
+	}
+
+	@Benchmark
+	public FeatureVector buildCompact() {
+		return buildCompactVector(new TermOrdinals(), 0);
+	}
+
+	@Benchmark
+	public FeatureVector pruneToSizeHash() {
+		return buildHashVector(0).pruneToSize(PRUNED_SIZE);
+	}
+
+	@Benchmark
+	public FeatureVector pruneToSizeCompact() {
+		return buildCompactVector(new TermOrdinals(), 0).pruneToSize(PRUNED_SIZE);
+	}
+
+	@Benchmark
+	public FeatureVector scaleToUnitL1NormHash() {
+		return hashVector.scaleToUnitL1Norm();
+	}
+
+	@Benchmark
+	public FeatureVector scaleToUnitL1NormCompact() {
+		return compactVector.scaleToUnitL1Norm();
+	}
+
+	@Benchmark
+	public FeatureVector interpolateHash() {
+		return FeatureVector.interpolate(hashVector, otherHashVector, ORIGINAL_QUERY_WEIGHT);
+	}
+
+	@Benchmark
+	public FeatureVector interpolateCompact() {
+		return FeatureVector.interpolate(compactVector, otherCompactVector, ORIGINAL_QUERY_WEIGHT);
+	}
+}
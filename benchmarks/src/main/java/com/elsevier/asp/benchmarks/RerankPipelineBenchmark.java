@@ -0,0 +1,89 @@
+package com.elsevier.asp.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end requests to the /anserini handler of an {@link EmbeddedIndex},
+ * for bow, sdm and two-phase sdm2 query A, rm3, ax and id reranking, and rerankCutoff 50, 200
+ * and 1000. Throughput and sampled latency (with its p99) are reported; run
+ * with -prof gc for allocation rates. Every invocation sends a new random
+ * query of three mid frequency words, so the expansion cache does not
+ * answer repeated queries.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+@State(Scope.Benchmark)
+public class RerankPipelineBenchmark {
+
+	private static final int NUM_DOCS = 20000;
+	private static final long INDEX_SEED = 42L;
+	// queries are drawn from these frequency ranks, frequent enough for 1000 hits
+	private static final int MIN_QUERY_RANK = 10;
+	private static final int MAX_QUERY_RANK = 300;
+	private static final int QUERY_LENGTH = 3;
+
+	@Param({"bow", "sdm", "sdm2"})
+	public String qtype;
+
+	@Param({"rm3", "ax", "id"})
+	public String rtype;
+
+	@Param({"50", "200", "1000"})
+	public int rerankCutoff;
+
+	private EmbeddedIndex index;
+	private Random random;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		index = EmbeddedIndex.open(NUM_DOCS, INDEX_SEED);
+		random = new Random(7L);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		index.close();
+	}
+
+	@Benchmark
+	public NamedList<Object> query() throws Exception {
+		StringBuilder q = new StringBuilder();
+		for (int i = 0; i < QUERY_LENGTH; i++) {
+			if (i > 0) {
+				q.append(' ');
+			}
+			q.append(index.getVocabulary().wordAt(
+					MIN_QUERY_RANK + random.nextInt(MAX_QUERY_RANK - MIN_QUERY_RANK)));
+		}
+		ModifiableSolrParams params = new ModifiableSolrParams();
+		params.set("q", q.toString());
+		params.set("qtype", qtype);
+		params.set("rtype", rtype);
+		params.set("rerankCutoff", rerankCutoff);
+		params.set("ax.seed", "42");
+		QueryRequest request = new QueryRequest(params);
+		request.setPath("/anserini");
+		return index.getServer().request(request, EmbeddedIndex.CORE_NAME);
+	}
+}
@@ -0,0 +1,97 @@
+package com.elsevier.asp.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TopDocs;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.util.RefCounted;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.elsevier.asp.QueryBuilderFactory;
+
+/**
+ * Builds and runs SDM query A with span, interval and phrase window
+ * components for 2, 5 and 10 word queries against the {@link EmbeddedIndex},
+ * collecting the top 1000 documents. Each invocation uses a new random query
+ * of mid frequency words.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+@State(Scope.Benchmark)
+public class SeqDepModelQueryBenchmark {
+
+	private static final int NUM_DOCS = 20000;
+	private static final long INDEX_SEED = 42L;
+	private static final int MIN_QUERY_RANK = 10;
+	private static final int MAX_QUERY_RANK = 300;
+	private static final int NUM_HITS = 1000;
+	private static final String FIELD_NAME = "para_text_bm";
+
+	@Param({"span", "interval", "phrase"})
+	public String impl;
+
+	@Param({"2", "5", "10"})
+	public int queryLength;
+
+	private EmbeddedIndex index;
+	private SolrCore core;
+	private RefCounted<SolrIndexSearcher> searcher;
+	private Analyzer analyzer;
+	private Map<String,Float> params;
+	private Random random;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		index = EmbeddedIndex.open(NUM_DOCS, INDEX_SEED);
+		core = index.getContainer().getCore(EmbeddedIndex.CORE_NAME);
+		searcher = core.getSearcher();
+		analyzer = core.getLatestSchema().getFieldType(FIELD_NAME).getQueryAnalyzer();
+		params = new HashMap<String,Float>();
+		params.put("termWeight", 0.85f);
+		params.put("orderedWindowWeight", 0.1f);
+		params.put("unorderedWindowWeight", 0.05f);
+		random = new Random(7L);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		searcher.decref();
+		core.close();
+		index.close();
+	}
+
+	@Benchmark
+	public TopDocs search() throws Exception {
+		StringBuilder q = new StringBuilder();
+		for (int i = 0; i < queryLength; i++) {
+			if (i > 0) {
+				q.append(' ');
+			}
+			q.append(index.getVocabulary().wordAt(MIN_QUERY_RANK + random.nextInt(MAX_QUERY_RANK - MIN_QUERY_RANK)));
+		}
+		Query query = new QueryBuilderFactory().buildSeqDepModelQuery(q.toString(), FIELD_NAME, analyzer,
+				params, impl);
+		return searcher.get().search(query, NUM_HITS);
+	}
+}
@@ -3,25 +3,51 @@ curl -X POST -H 'Content-type:application/json' http://localhost:8983/solr/qaind
   "add-requesthandler": {
     "name": "/anserini",
     "class": "com.elsevier.asp.AnseriniRequestHandler",
+    "parallel.threads": 8,
+    "parallel.maxTasksPerRequest": 4,
+    "batch.threads": 4,
+    "resultCache": "anseriniResultCache",
+    "admission.rm3.permits": 16,
+    "admission.ax.permits": 4,
+    "admission.queueTimeoutMs": 100,
     "defaults": {
         "sim"                       : "bm",
         "qtype"                     : "bow",
         "rtype"                     : "rm3",
         "rerankCutoff"              : "50",
+        "rerank.mode"               : "search",
+        "rerank.parallelMinDocs"    : "0",
         "sdm.termWeight"            : "0.85",
         "sdm.orderedWindowWeight"   : "0.1",
         "sdm.unorderedWindowWeight" : "0.05",
+        "sdm.impl"                  : "span",
         "rm3.fbTerms"               : "10",
         "rm3.fbDocs"                : "10",
         "rm3.originalQueryWeight"   : "0.5",
+        "rm3.compactVectors"        : "false",
         "ax.R"                      : "20",
         "ax.N"                      : "20",
         "ax.K"                      : "1000",
         "ax.M"                      : "30",
         "ax.beta"                   : "0.4",
+        "ax.parallel"               : "false",
         "start"                     : "0",
         "rows"                      : "10",
         "fl"                        : "pii,isbns_f,book_title,chapter_title,para_id,para_text"
     }
+  },
+  "add-queryresponsewriter": {
+    "name": "trec",
+    "class": "com.elsevier.asp.TrecRunResponseWriter"
+  },
+  "add-listener": {
+    "event": "firstSearcher",
+    "name": "anseriniFirstSearcherWarmup",
+    "class": "com.elsevier.asp.AnseriniWarmupListener"
+  },
+  "add-listener": {
+    "event": "newSearcher",
+    "name": "anseriniNewSearcherWarmup",
+    "class": "com.elsevier.asp.AnseriniWarmupListener"
   }
 }'
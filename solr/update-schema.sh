@@ -55,5 +55,13 @@ curl -X POST -H 'Content-type:application/json' http://localhost:8983/solr/qaind
     "termVectors": true,
     "termPositions": true,
     "termOffsets": true
+  },
+  "add-field": {
+    "name": "para_text_bm_fwd",
+    "type": "forward_index"
+  },
+  "add-field": {
+    "name": "para_text_ql_fwd",
+    "type": "forward_index"
   }
 }'
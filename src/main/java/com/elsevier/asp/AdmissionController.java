@@ -0,0 +1,91 @@
+package com.elsevier.asp;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.solr.common.params.SolrParams;
+
+/**
+ * Limits how many requests of each reranker type a handler runs at the same
+ * time, so that a burst of expensive Axiomatic or RM3 requests can not take
+ * every request thread away from cheap ones. Each of rm3, ax and id (which
+ * also covers unknown rtypes) has its own permits; a request that finds none
+ * free waits up to the queue timeout for one.
+ */
+public class AdmissionController {
+
+	private final Semaphore rm3Permits;
+	private final Semaphore axPermits;
+	private final Semaphore idPermits;
+	private final long queueTimeoutMillis;
+
+	/**
+	 * @param rm3Permits most rm3 requests running at once, 0 for no limit
+	 * @param axPermits most ax requests running at once, 0 for no limit
+	 * @param idPermits most id requests running at once, 0 for no limit
+	 * @param queueTimeoutMillis longest wait for a permit
+	 */
+	public AdmissionController(int rm3Permits, int axPermits, int idPermits, long queueTimeoutMillis) {
+		this.rm3Permits = newSemaphore(rm3Permits);
+		this.axPermits = newSemaphore(axPermits);
+		this.idPermits = newSemaphore(idPermits);
+		this.queueTimeoutMillis = queueTimeoutMillis;
+	}
+
+	/**
+	 * Reads admission.rm3.permits, admission.ax.permits, admission.id.permits
+	 * (all unlimited by default) and admission.queueTimeoutMs (default 100).
+	 */
+	public static AdmissionController fromInitParams(SolrParams initParams) {
+		return new AdmissionController(initParams.getInt("admission.rm3.permits", 0),
+				initParams.getInt("admission.ax.permits", 0), initParams.getInt("admission.id.permits", 0),
+				initParams.getLong("admission.queueTimeoutMs", 100L));
+	}
+
+	/**
+	 * Waits up to the queue timeout for a permit to rerank with rtype.
+	 * Returns null if none was free in time; the permit is given back by
+	 * closing it.
+	 */
+	public Permit acquire(String rtype) throws InterruptedException {
+		Semaphore semaphore = semaphoreFor(rtype);
+		if (semaphore == null) {
+			return Permit.UNLIMITED;
+		}
+		if (!semaphore.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS)) {
+			return null;
+		}
+		return new Permit(semaphore);
+	}
+
+	private Semaphore semaphoreFor(String rtype) {
+		if ("rm3".equals(rtype)) {
+			return rm3Permits;
+		} else if ("ax".equals(rtype)) {
+			return axPermits;
+		}
+		return idPermits;
+	}
+
+	private static Semaphore newSemaphore(int permits) {
+		return (permits > 0) ? new Semaphore(permits, true) : null;
+	}
+
+	public static class Permit implements AutoCloseable {
+
+		private static final Permit UNLIMITED = new Permit(null);
+
+		private final Semaphore semaphore;
+
+		private Permit(Semaphore semaphore) {
+			this.semaphore = semaphore;
+		}
+
+		@Override
+		public void close() {
+			if (semaphore != null) {
+				semaphore.release();
+			}
+		}
+	}
+}
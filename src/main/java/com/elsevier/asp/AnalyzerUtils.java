@@ -2,6 +2,7 @@ package com.elsevier.asp;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.lucene.analysis.Analyzer;
@@ -10,23 +11,32 @@ import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 
 public class AnalyzerUtils {
 
+	/**
+	 * Returns the non empty tokens the analyzer produces for the query, or
+	 * none if the analysis fails. Requests analyze through the handler's
+	 * QueryTokenCache instead.
+	 */
 	public static List<String> tokenizeQuery(String queryString, String fieldName, Analyzer analyzer) {
-		List<String> queryTokens = new ArrayList<String>();
 		try {
-			TokenStream tokenStream = analyzer.tokenStream(fieldName, queryString);
+			return analyze(queryString, fieldName, analyzer);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return Collections.emptyList();
+		}
+	}
+
+	private static List<String> analyze(String queryString, String fieldName, Analyzer analyzer)
+			throws IOException {
+		List<String> queryTokens = new ArrayList<String>();
+		try (TokenStream tokenStream = analyzer.tokenStream(fieldName, queryString)) {
 			CharTermAttribute termAttr = tokenStream.getAttribute(CharTermAttribute.class);
 			tokenStream.reset();
 			while (tokenStream.incrementToken()) {
-				String token = termAttr.toString();
-				if (token.length() == 0) continue;
-				queryTokens.add(token);
+				if (termAttr.length() == 0) continue;
+				queryTokens.add(termAttr.toString());
 			}
 			tokenStream.end();
-			tokenStream.close();
-		} catch (IOException e) {
-			e.printStackTrace();
 		}
 		return queryTokens;
 	}
-
 }
@@ -0,0 +1,143 @@
+package com.elsevier.asp;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+import org.apache.solr.core.SolrInfoBean;
+import org.apache.solr.metrics.SolrMetricsContext;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.UniformReservoir;
+
+/**
+ * Metrics updated by the reranking pipeline. A default instance keeps
+ * unregistered metrics, so the pipeline can run outside of a request
+ * handler; AnseriniRequestHandler replaces it with one registered under
+ * the handler's metrics context.
+ */
+public class AnseriniMetrics {
+
+	private final Counter expansionCacheHits;
+	private final Counter expansionCacheMisses;
+	private final Counter expansionTimeSaved;
+	private final Counter rerankDegraded;
+	private final Counter rerankRejected;
+	// per stage timers and allocation histograms, created on first use
+	private final Map<String,Timer> stageTimers = new ConcurrentHashMap<String,Timer>();
+	private final Map<String,Histogram> stageAllocations = new ConcurrentHashMap<String,Histogram>();
+	private final SolrMetricsContext context;
+	private final SolrInfoBean bean;
+	private final String scope;
+
+	public AnseriniMetrics() {
+		this.context = null;
+		this.bean = null;
+		this.scope = null;
+		this.expansionCacheHits = new Counter();
+		this.expansionCacheMisses = new Counter();
+		this.expansionTimeSaved = new Counter();
+		this.rerankDegraded = new Counter();
+		this.rerankRejected = new Counter();
+	}
+
+	/**
+	 * @param currentResources resources of the core's current searcher, for
+	 *        the term statistics gauges; may return null
+	 */
+	public AnseriniMetrics(SolrMetricsContext context, SolrInfoBean bean, String scope,
+			Supplier<SearcherResources> currentResources) {
+		this.context = context;
+		this.bean = bean;
+		this.scope = scope;
+		String category = bean.getCategory().toString();
+		this.expansionCacheHits = context.counter(bean, "expansionCacheHits", category, scope);
+		this.expansionCacheMisses = context.counter(bean, "expansionCacheMisses", category, scope);
+		this.expansionTimeSaved = context.counter(bean, "expansionCacheTimeSavedMs", category, scope);
+		this.rerankDegraded = context.counter(bean, "rerankDegraded", category, scope);
+		this.rerankRejected = context.counter(bean, "rerankRejected", category, scope);
+		context.gauge(bean, (Gauge<Double>) this::getExpansionCacheHitRatio, true, "expansionCacheHitRatio",
+				category, scope);
+		context.gauge(bean, (Gauge<Long>) () -> sumTermStatistics(currentResources, TermStatistics::getBuildMillis),
+				true, "termStatisticsBuildMs", category, scope);
+		context.gauge(bean, (Gauge<Long>) () -> sumTermStatistics(currentResources, TermStatistics::ramBytesUsed),
+				true, "termStatisticsRamBytes", category, scope);
+		context.gauge(bean, (Gauge<Long>) () -> sumTermStatistics(currentResources, TermStatistics::getNumCommonTerms),
+				true, "termStatisticsTerms", category, scope);
+	}
+
+	// over the fields whose statistics the current searcher has built, 0 without a searcher
+	private static long sumTermStatistics(Supplier<SearcherResources> currentResources,
+			ToLongFunction<TermStatistics> value) {
+		SearcherResources resources = currentResources.get();
+		if (resources == null) {
+			return 0L;
+		}
+		long sum = 0L;
+		for (TermStatistics statistics : resources.getBuiltTermStatistics()) {
+			sum += value.applyAsLong(statistics);
+		}
+		return sum;
+	}
+
+	public Counter getExpansionCacheHits() {
+		return expansionCacheHits;
+	}
+
+	public Counter getExpansionCacheMisses() {
+		return expansionCacheMisses;
+	}
+
+	/** milliseconds of expansion work answered from the expansion cache */
+	public Counter getExpansionTimeSaved() {
+		return expansionTimeSaved;
+	}
+
+	/** rm3 and ax requests answered with query A's ranking for lack of a permit */
+	public Counter getRerankDegraded() {
+		return rerankDegraded;
+	}
+
+	/** requests refused for lack of any permit */
+	public Counter getRerankRejected() {
+		return rerankRejected;
+	}
+
+	public double getExpansionCacheHitRatio() {
+		long hits = expansionCacheHits.getCount();
+		long lookups = hits + expansionCacheMisses.getCount();
+		return (lookups == 0) ? 0.0 : (double) hits / lookups;
+	}
+
+	/**
+	 * Records one run of a request stage, registered as stage.{name} (timer)
+	 * and stage.{name}.allocatedBytes (histogram).
+	 *
+	 * @param allocatedBytes bytes allocated by the stage, or -1 if unknown
+	 */
+	public void record(String stage, long elapsedNanos, long allocatedBytes) {
+		stageTimers.computeIfAbsent(stage, this::newTimer).update(elapsedNanos, TimeUnit.NANOSECONDS);
+		if (allocatedBytes >= 0) {
+			stageAllocations.computeIfAbsent(stage, this::newHistogram).update(allocatedBytes);
+		}
+	}
+
+	private Timer newTimer(String stage) {
+		if (context == null) {
+			return new Timer();
+		}
+		return context.timer(bean, "stage." + stage, bean.getCategory().toString(), scope);
+	}
+
+	private Histogram newHistogram(String stage) {
+		if (context == null) {
+			return new Histogram(new UniformReservoir());
+		}
+		return context.histogram(bean, "stage." + stage + ".allocatedBytes", bean.getCategory().toString(), scope);
+	}
+}
@@ -1,27 +1,101 @@
 package com.elsevier.asp;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
-import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.TopDocs;
-import org.apache.solr.common.SolrDocument;
+
 import org.apache.solr.common.SolrDocumentList;
+import org.apache.lucene.search.Query;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.ExecutorUtil;
 import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.common.util.SolrNamedThreadFactory;
+import org.apache.solr.core.SolrCore;
 import org.apache.solr.handler.RequestHandlerBase;
+import org.apache.solr.metrics.SolrMetricsContext;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.search.SolrCache;
 import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.util.plugin.SolrCoreAware;
+
+
+public class AnseriniRequestHandler extends RequestHandlerBase implements SolrCoreAware {
+
+	// shared by all requests to this handler for parallel reranking work
+	private ExecutorService executor;
+	// runs the queries of batch requests, separate from executor since they hand work to it
+	private ExecutorService batchExecutor;
+	private int maxTasksPerRequest;
+	private AnseriniMetrics metrics = new AnseriniMetrics();
+	// analyzed queries, shared by the result cache keys and the pipelines of this core
+	private final QueryTokenCache tokenCache = new QueryTokenCache();
+	// name of the SolrCache declared in solrconfig.xml for reranked results, caching is off without it
+	private String resultCacheName;
+	// limits on concurrent requests per rtype
+	private AdmissionController admission;
+	private volatile SolrCore core;
+
+	@Override
+	public void init(@SuppressWarnings("rawtypes") NamedList args) {
+		super.init(args);
+		SolrParams initParams = (args == null) ? new ModifiableSolrParams() : args.toSolrParams();
+		int numThreads = initParams.getInt("parallel.threads", Runtime.getRuntime().availableProcessors());
+		maxTasksPerRequest = initParams.getInt("parallel.maxTasksPerRequest", Math.max(1, numThreads / 2));
+		resultCacheName = initParams.get("resultCache", "anseriniResultCache");
+		admission = AdmissionController.fromInitParams(initParams);
+		executor = ExecutorUtil.newMDCAwareFixedThreadPool(Math.max(1, numThreads),
+				new SolrNamedThreadFactory("anseriniRerank"));
+		batchExecutor = ExecutorUtil.newMDCAwareFixedThreadPool(Math.max(1, initParams.getInt("batch.threads", numThreads)),
+				new SolrNamedThreadFactory("anseriniBatch"));
+	}
 
+	@Override
+	public void initializeMetrics(SolrMetricsContext parentContext, String scope) {
+		super.initializeMetrics(parentContext, scope);
+		metrics = new AnseriniMetrics(solrMetricsContext, this, scope, this::getCurrentResources);
+	}
+
+	@Override
+	public void inform(SolrCore core) {
+		this.core = core;
+	}
+
+	private SearcherResources getCurrentResources() {
+		SolrCore core = this.core;
+		if (core == null || core.isClosed()) {
+			return null;
+		}
+		try {
+			return core.withSearcher(searcher -> SearcherResources.forSearcher(searcher));
+		} catch (IOException e) {
+			return null;
+		}
+	}
 
-public class AnseriniRequestHandler extends RequestHandlerBase {
+	@Override
+	public void close() throws IOException {
+		if (batchExecutor != null) {
+			ExecutorUtil.shutdownAndAwaitTermination(batchExecutor);
+		}
+		if (executor != null) {
+			ExecutorUtil.shutdownAndAwaitTermination(executor);
+		}
+		super.close();
+	}
 
 	@Override
 	public String getDescription() {
@@ -32,116 +106,208 @@ public class AnseriniRequestHandler extends RequestHandlerBase {
 	public void handleRequestBody(SolrQueryRequest req, SolrQueryResponse resp) throws Exception {
 		
 		// step 1: extract parameters from request
-		String q = req.getParams().get("q");
-		String[] fq = req.getParams().getParams("fq");
 		String similarity = req.getParams().get("sim", "bm");  // [bm, ql]
-		String qtype = req.getParams().get("qtype", "bow");    // [bow, sdm]
-		String rtype = req.getParams().get("rtype", "rm3");    // [rm3, ax, id]
-		int rerankCutoff = Integer.valueOf(req.getParams().get("rerankCutoff", "50"));
-		
-		// step 2: analyze query
 		String fieldName = "para_text_" + similarity;
-		Analyzer analyzer = req.getSchema().getFieldType(fieldName).getQueryAnalyzer();
-		
-		// step 3: parse query and transform to query A
-		QueryBuilderFactory qbf = new QueryBuilderFactory();
-		Query query = null;
-		if ("bow".equals(qtype)) { // "bow"
-			query = qbf.buildBagOfWordsQuery(q, fq, fieldName, analyzer);
-		} else {                   // "sdm"
-			Map<String,Float> params = new HashMap<String,Float>();
-			params.put("termWeight", 
-					Float.valueOf(req.getParams().get("sdm.termWeight", "0.85")));
-			params.put("orderedWindowWeight", 
-					Float.valueOf(req.getParams().get("sdm.orderedWindowWeight", "0.1")));
-			params.put("unorderedWindowWeight",
-					Float.valueOf(req.getParams().get("sdm.unorderedWindowWeight", "0.05")));
-			query = qbf.buildSeqDepModelQuery(q, fq, fieldName, analyzer, params);
-		}
-		
-		// step 4: analyze results of query A and build query B
 		SolrIndexSearcher searcher = req.getSearcher();
-		TopDocs topDocs = searcher.search(query, rerankCutoff);
-		long numFound = topDocs.totalHits.value;
-		List<String> results = new ArrayList<String>();
-		for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
-			Document doc = searcher.doc(scoreDoc.doc);
-			String docId = doc.get("doc_id");
-			String paraId = doc.get("para_id");
-			results.add(docId + "/" + paraId);
-		}
-		
-		// step 5: run query B and return response
-		RerankedResult rerankedResults = null;
-		RerankerFactory rf = new RerankerFactory();
-		Map<String,Float> params = new HashMap<String,Float>();
-		// :HACK: to allow testing ANSERINI-422
-		params.put("_restrict", req.getParams().getBool("_restrict", false) ? 1.0F: 0.0F);
-		if ("rm3".equals(rtype)) {       // "rm3"
-			params.put("fbTerms", Float.valueOf(req.getParams().get("rm3.fbTerms", "10")));
-			params.put("fbDocs", Float.valueOf(req.getParams().get("rm3.fbDocs", "10")));
-			params.put("originalQueryWeight", 
-					Float.valueOf(req.getParams().get("rm3.originalQueryWeight", "0.5")));
-			rerankedResults = rf.rerankWithRM3(topDocs.scoreDocs, params, q, fieldName, 
-					analyzer, searcher);
-		} else if ("ax".equals(rtype)) { // "ax"
-			params.put("R", Float.valueOf(req.getParams().get("ax.R", "20")));
-			params.put("N", Float.valueOf(req.getParams().get("ax.N", "20")));
-			params.put("K", Float.valueOf(req.getParams().get("ax.K", "1000")));
-			params.put("M", Float.valueOf(req.getParams().get("ax.M", "30")));
-			params.put("beta", Float.valueOf(req.getParams().get("ax.beta", "0.4")));
-			rerankedResults = rf.rerankWithAxiom(topDocs.scoreDocs, params, q, 
-					fieldName, analyzer, searcher);
-		} else {                         // "id"
-			rerankedResults = rf.rerankWithIdentity(topDocs.scoreDocs);
+		if (req.getParams().getBool("batch", false)) {
+			handleBatch(req, resp, searcher);
+			return;
 		}
 
+		StageTimings timings = new StageTimings(metrics);
+
+		// steps 2 to 5: rank with query A and rerank with query B, unless a
+		// request ranking the same way is in the result cache
+		Ranking ranking = rank(req.getParams(), searcher,
+				new RerankPipeline(executor, maxTasksPerRequest, admission, tokenCache), timings);
+
 		// step 6: create additional header information
 		NamedList<Object> header = resp.getResponseHeader();
-		Map<String,String> requestParams = new HashMap<String,String>();
-		Iterator<Entry<String,String[]>> it = req.getParams().iterator();
-		while (it.hasNext()) {
-			Entry<String,String[]> e = it.next();
-			requestParams.put(e.getKey(), e.getValue()[0]);
-		}
-		header.add("params", requestParams);
-		header.add("query_a", query.toString());
-		if (rtype.equals("id")) {
-			header.add("query_b", "N/A");
-		} else {
-			header.add("query_b", rerankedResults.getQuery().toString());
-		}
-		if (rerankedResults.getErrorMessage() != null) {
-			header.add("error_message", rerankedResults.getErrorMessage());
+		try (StageTimings.Stage stage = timings.start("header")) {
+			Map<String,String> requestParams = new HashMap<String,String>();
+			Iterator<Entry<String,String[]>> it = req.getParams().iterator();
+			while (it.hasNext()) {
+				Entry<String,String[]> e = it.next();
+				requestParams.put(e.getKey(), e.getValue()[0]);
+			}
+			header.add("params", requestParams);
+			header.add("query_a", ranking.getQueryA());
+			header.add("query_b", ranking.getQueryB());
+			if (ranking.getErrorMessage() != null) {
+				header.add("error_message", ranking.getErrorMessage());
+			}
+			if (ranking.isPartial()) {
+				header.add("partialResults", Boolean.TRUE);
+			}
 		}
 		
-		// step 7: create paginated SolrDocumentList for response
+		// step 7: create paginated SolrDocumentList for response, or in export
+		// mode stream the whole ranking with ids read from docValues
+		if (isExportRequested(req.getParams())) {
+			String[] exportFields = getExportFields(req.getParams());
+			header.add("numFound", ranking.getNumFound());
+			header.add("numFoundExact", ranking.isNumFoundExact());
+			if (isTimingRequested(req.getParams())) {
+				header.add("timing", timings.toNamedList());
+			}
+			resp.add("docs", new RankingExport(searcher, exportFields, ranking.getDocuments()));
+			return;
+		}
 		int start = req.getParams().getInt("start", 0);
 		int rows = req.getParams().getInt("rows", 10);
 		String[] fieldList = req.getParams().get("fl").split(",");
-		int currDoc = 0;
-		SolrDocumentList doclist = new SolrDocumentList();
-		for (ScoreDoc scoreDoc : rerankedResults.getDocuments()) {
-			if (currDoc < start) {
-				currDoc++;
-				continue;
+		SolrDocumentList doclist;
+		try (StageTimings.Stage stage = timings.start("fetch")) {
+			ResultFetcher fetcher = new ResultFetcher(searcher, fieldList, fieldName);
+			doclist = fetcher.fetch(ranking.getDocuments(), start, rows, ranking.getNumFound(),
+					ranking.isNumFoundExact());
+		}
+		if (isTimingRequested(req.getParams())) {
+			header.add("timing", timings.toNamedList());
+		}
+		resp.add("docs", doclist);
+	}
+
+	// result cache lookup, and on a miss the rerank pipeline
+	private Ranking rank(SolrParams params, SolrIndexSearcher searcher, RerankPipeline pipeline,
+			StageTimings timings) throws Exception {
+		@SuppressWarnings("unchecked")
+		SolrCache<ResultCacheKey,Ranking> resultCache = (resultCacheName == null) ? null
+				: (SolrCache<ResultCacheKey,Ranking>) searcher.getCache(resultCacheName);
+		// parsed once, for both the cache key and the ranking
+		List<Query> filters;
+		try (StageTimings.Stage stage = timings.start("filters.parse")) {
+			filters = RerankPipeline.parseFilters(params, searcher);
+		}
+		ResultCacheKey cacheKey = null;
+		Ranking ranking = null;
+		if (resultCache != null) {
+			try (StageTimings.Stage stage = timings.start("resultCache")) {
+				cacheKey = ResultCacheKey.create(params, filters, searcher.getSchema(), tokenCache);
+				ranking = resultCache.get(cacheKey);
+			}
+		}
+		if (ranking == null) {
+			ranking = pipeline.run(params, filters, searcher, timings);
+			if (resultCache != null && ranking.getErrorMessage() == null && !ranking.isPartial()) {
+				resultCache.put(cacheKey, ranking);
 			}
-			Document idoc = searcher.doc(scoreDoc.doc);
-			SolrDocument oDoc = new SolrDocument();
-			for (String fieldElementName : fieldList) {
-				if (! "para_text".equals(fieldElementName)) {
-					oDoc.addField(fieldElementName, idoc.get(fieldElementName));
-				} else {
-					oDoc.addField("para_text", idoc.getFields(fieldName)[0]);
+		}
+		return ranking;
+	}
+
+	/**
+	 * Ranks every query in the request body (see {@link BatchQuery#parse})
+	 * on the batch thread pool, all against the request's searcher so that
+	 * they share its caches. Each query takes the other parameters of the
+	 * request. Batch queries are not subject to admission permits, the size
+	 * of the batch pool bounds them instead.
+	 */
+	private void handleBatch(SolrQueryRequest req, SolrQueryResponse resp, SolrIndexSearcher searcher)
+			throws Exception {
+		long startTime = System.nanoTime();
+		List<BatchQuery> queries = BatchQuery.parse(req.getContentStreams());
+		if (queries.isEmpty()) {
+			throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+					"batch=true needs queries in the request body, as JSON or one qid and query per line");
+		}
+		SolrParams params = req.getParams();
+		boolean export = isExportRequested(params);
+		String[] exportFields = export ? getExportFields(params) : null;
+		if (export) {
+			// fails on fields that can not be exported before any query is run
+			new RankingExport(searcher, exportFields, new ScoreDoc[0]);
+		}
+		int start = params.getInt("start", 0);
+		int rows = params.getInt("rows", 10);
+		// pages are fetched with fl as for a single query
+		ResultFetcher fetcher = export ? null
+				: new ResultFetcher(searcher, params.get("fl").split(","), "para_text_" + params.get("sim", "bm"));
+		RerankPipeline pipeline = new RerankPipeline(executor, maxTasksPerRequest, null, tokenCache);
+
+		List<StageTimings> timings = new ArrayList<StageTimings>();
+		List<Future<BatchResult>> futures = new ArrayList<Future<BatchResult>>();
+		for (BatchQuery query : queries) {
+			ModifiableSolrParams queryParams = new ModifiableSolrParams(params);
+			queryParams.remove("batch");
+			queryParams.set(CommonParams.Q, query.getQuery());
+			StageTimings queryTimings = new StageTimings(metrics);
+			timings.add(queryTimings);
+			futures.add(batchExecutor.submit(() -> {
+				try {
+					Ranking ranking = rank(queryParams, searcher, pipeline, queryTimings);
+					if (export) {
+						return new BatchResult(query.getQid(), ranking,
+								new RankingExport(searcher, exportFields, ranking.getDocuments()));
+					}
+					try (StageTimings.Stage stage = queryTimings.start("fetch")) {
+						return new BatchResult(query.getQid(), ranking, fetcher.fetch(ranking.getDocuments(), start,
+								rows, ranking.getNumFound(), ranking.isNumFoundExact()));
+					}
+				} catch (SolrException e) {
+					return BatchResult.failed(query.getQid(), e.getMessage());
+				} catch (Exception e) {
+					// one failing query does not fail the batch
+					return BatchResult.failed(query.getQid(), e.toString());
+				}
+			}));
+		}
+		List<BatchResult> results = new ArrayList<BatchResult>();
+		int failed = 0;
+		try {
+			for (Future<BatchResult> future : futures) {
+				BatchResult result = future.get();
+				results.add(result);
+				if (result.isFailed()) {
+					failed++;
 				}
 			}
-			oDoc.addField("score", scoreDoc.score);
-			doclist.add(oDoc);
-			currDoc++;
-			if (currDoc >= start + rows) break;
+		} catch (ExecutionException e) {
+			throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, e.getCause());
+		} finally {
+			for (Future<BatchResult> future : futures) {
+				future.cancel(true);
+			}
 		}
-		doclist.setNumFound(numFound);
-		doclist.setStart(start);
-		resp.add("docs", doclist);
+
+		NamedList<Object> header = resp.getResponseHeader();
+		NamedList<Object> batch = new SimpleOrderedMap<Object>();
+		batch.add("queries", queries.size());
+		batch.add("failed", failed);
+		batch.add("time", (System.nanoTime() - startTime) / 1000000.0);
+		if (isTimingRequested(params)) {
+			batch.add("stages", StageTimings.sum(timings));
+		}
+		header.add("batch", batch);
+		resp.add("results", results);
+	}
+
+	// export=true, or a TREC run, which is always a whole ranking
+	private static boolean isExportRequested(SolrParams params) {
+		return params.getBool("export", false) || TrecRunResponseWriter.NAME.equals(params.get(CommonParams.WT));
+	}
+
+	// only the docno of a TREC run, or export.fl
+	private static String[] getExportFields(SolrParams params) {
+		if (TrecRunResponseWriter.NAME.equals(params.get(CommonParams.WT))) {
+			return new String[] { params.get("trec.docno", "para_id") };
+		}
+		return params.get("export.fl", "id,para_id").split(",");
+	}
+
+	// debug=timing, or debug=all / debugQuery=true, which include it
+	private static boolean isTimingRequested(SolrParams params) {
+		if (params.getBool("debugQuery", false)) {
+			return true;
+		}
+		String[] debug = params.getParams("debug");
+		if (debug != null) {
+			for (String value : debug) {
+				if ("timing".equals(value) || "all".equals(value) || "true".equals(value)) {
+					return true;
+				}
+			}
+		}
+		return false;
 	}
 }
@@ -0,0 +1,28 @@
+package com.elsevier.asp;
+
+import java.io.IOException;
+
+import org.apache.solr.core.AbstractSolrEventListener;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.search.SolrIndexSearcher;
+
+/**
+ * Builds the per-searcher {@link SearcherResources} while a new searcher is
+ * being warmed, so the first reranked query against it does not pay for it.
+ * Register for both firstSearcher and newSearcher events in solrconfig.xml.
+ */
+public class AnseriniWarmupListener extends AbstractSolrEventListener {
+
+	public AnseriniWarmupListener(SolrCore core) {
+		super(core);
+	}
+
+	@Override
+	public void newSearcher(SolrIndexSearcher newSearcher, SolrIndexSearcher currentSearcher) {
+		try {
+			SearcherResources.forSearcher(newSearcher).warm();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
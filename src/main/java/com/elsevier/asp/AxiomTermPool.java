@@ -0,0 +1,243 @@
+package com.elsevier.asp;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.FutureArrays;
+
+/**
+ * Inverted index over the Axiomatic reranking pool. Pool documents are
+ * remapped to dense ordinals 0..poolSize-1 and terms to ordinals in sorted
+ * term order, so that the mutual information between two terms comes down
+ * to counting the intersection of their posting sets. Terms occurring in
+ * at least 1/64th of the pool keep a bitset and are intersected with a
+ * popcount over words, rarer terms keep a sorted int[] of doc ordinals
+ * and are probed against the other term's bitset. Term bytes are kept back
+ * to back rather than as strings, which are only made for the terms asked
+ * for.
+ */
+public class AxiomTermPool {
+
+	private static final int DENSE_RATIO = 64;
+
+	// term ord is termBytes[termOffsets[ord]] to termBytes[termOffsets[ord + 1]]
+	private final byte[] termBytes;
+	private final int[] termOffsets;
+	private final int[][] postings;
+	private final FixedBitSet[] bits;
+	private final int poolSize;
+	private final int numDocs;
+
+	private AxiomTermPool(byte[] termBytes, int[] termOffsets, int[][] postings, FixedBitSet[] bits, int poolSize,
+			int numDocs) {
+		this.termBytes = termBytes;
+		this.termOffsets = termOffsets;
+		this.postings = postings;
+		this.bits = bits;
+		this.poolSize = poolSize;
+		this.numDocs = numDocs;
+	}
+
+	public int numTerms() {
+		return postings.length;
+	}
+
+	public String term(int ord) {
+		return new String(termBytes, termOffsets[ord], termOffsets[ord + 1] - termOffsets[ord], StandardCharsets.UTF_8);
+	}
+
+	/** pool ordinal of the term, or -1 if no pool document has it */
+	public int ordinal(String term) {
+		BytesRef target = new BytesRef(term);
+		int low = 0;
+		int high = numTerms() - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = FutureArrays.compareUnsigned(termBytes, termOffsets[mid], termOffsets[mid + 1], target.bytes,
+					target.offset, target.offset + target.length);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/** number of pool documents that contain at least one term */
+	public int numDocs() {
+		return numDocs;
+	}
+
+	public int docFreq(int ord) {
+		return postings[ord].length;
+	}
+
+	/** posting set of a term as a bitset, shared for dense terms so callers must not modify it */
+	public FixedBitSet bitSet(int ord) {
+		if (bits[ord] != null) {
+			return bits[ord];
+		}
+		FixedBitSet set = new FixedBitSet(poolSize);
+		for (int doc : postings[ord]) {
+			set.set(doc);
+		}
+		return set;
+	}
+
+	public int intersectionCount(FixedBitSet x, int y) {
+		if (bits[y] != null) {
+			return (int) FixedBitSet.intersectionCount(x, bits[y]);
+		}
+		int count = 0;
+		for (int doc : postings[y]) {
+			if (x.get(doc)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Mutual information between the presence of term x (given as its
+	 * bitset) and term y in the pool documents.
+	 */
+	public double mutualInformation(FixedBitSet xBits, int x, int y) {
+		int totalDocCount = numDocs;
+		int x1 = docFreq(x), y1 = docFreq(y); // num docs where x occurs
+		int x0 = totalDocCount - x1, y0 = totalDocCount - y1; // num docs where x does not occur
+
+		if (x1 == 0 || x0 == 0 || y1 == 0 || y0 == 0) {
+			return 0;
+		}
+
+		float pX0 = 1.0f * x0 / totalDocCount;
+		float pX1 = 1.0f * x1 / totalDocCount;
+		float pY0 = 1.0f * y0 / totalDocCount;
+		float pY1 = 1.0f * y1 / totalDocCount;
+
+		int numXY11 = intersectionCount(xBits, y);
+		int numXY10 = x1 - numXY11; // doc num that x occurs but y doesn't
+		int numXY01 = y1 - numXY11; // doc num that y occurs but x doesn't
+		int numXY00 = totalDocCount - numXY11 - numXY10 - numXY01; // doc num that neither x nor y occurs
+
+		float pXY11 = 1.0f * numXY11 / totalDocCount;
+		float pXY10 = 1.0f * numXY10 / totalDocCount;
+		float pXY01 = 1.0f * numXY01 / totalDocCount;
+		float pXY00 = 1.0f * numXY00 / totalDocCount;
+
+		double m00 = 0, m01 = 0, m10 = 0, m11 = 0;
+		if (pXY00 != 0)
+			m00 = pXY00 * Math.log(pXY00 / (pX0 * pY0));
+		if (pXY01 != 0)
+			m01 = pXY01 * Math.log(pXY01 / (pX0 * pY1));
+		if (pXY10 != 0)
+			m10 = pXY10 * Math.log(pXY10 / (pX1 * pY0));
+		if (pXY11 != 0)
+			m11 = pXY11 * Math.log(pXY11 / (pX1 * pY1));
+		return m00 + m10 + m01 + m11;
+	}
+
+	/**
+	 * Collects (document ordinal, term) occurrences, each term at most once
+	 * per document. Terms are numbered in order of first appearance while
+	 * collecting, and renumbered in term order when the pool is built.
+	 */
+	public static class Builder {
+
+		private final int poolSize;
+		private final FixedBitSet docsSeen;
+		private final BytesRefHash terms = new BytesRefHash();
+		// term id in the upper half, document ordinal in the lower half, so
+		// that once ids follow term order sorting groups occurrences by term
+		// and then by document
+		private long[] occurrences = new long[256];
+		private int size;
+
+		public Builder(int poolSize) {
+			this.poolSize = poolSize;
+			this.docsSeen = new FixedBitSet(Math.max(poolSize, 1));
+		}
+
+		public void add(int doc, BytesRef term) {
+			int id = terms.add(term);
+			add(doc, (id < 0) ? -id - 1 : id);
+		}
+
+		public void add(int doc, String term) {
+			add(doc, new BytesRef(term));
+		}
+
+		private void add(int doc, int termId) {
+			if (size == occurrences.length) {
+				occurrences = ArrayUtil.grow(occurrences, size + 1);
+			}
+			occurrences[size++] = ((long) termId << 32) | doc;
+			docsSeen.set(doc);
+		}
+
+		/** adds the occurrences collected by another builder for the same pool */
+		public void addAll(Builder other) {
+			BytesRef scratch = new BytesRef();
+			int[] termIds = new int[other.terms.size()];
+			for (int otherId = 0; otherId < termIds.length; otherId++) {
+				int id = terms.add(other.terms.get(otherId, scratch));
+				termIds[otherId] = (id < 0) ? -id - 1 : id;
+			}
+			for (int i = 0; i < other.size; i++) {
+				add((int) other.occurrences[i], termIds[(int) (other.occurrences[i] >>> 32)]);
+			}
+		}
+
+		/** builds the pool, after which the builder must not be used */
+		public AxiomTermPool build() {
+			int numTerms = terms.size();
+			int[] sortedIds = terms.sort();
+			int[] termOrds = new int[numTerms];
+			int[] termOffsets = new int[numTerms + 1];
+			byte[] termBytes = new byte[16];
+			BytesRef scratch = new BytesRef();
+			for (int ord = 0; ord < numTerms; ord++) {
+				termOrds[sortedIds[ord]] = ord;
+				terms.get(sortedIds[ord], scratch);
+				termBytes = ArrayUtil.grow(termBytes, termOffsets[ord] + scratch.length);
+				System.arraycopy(scratch.bytes, scratch.offset, termBytes, termOffsets[ord], scratch.length);
+				termOffsets[ord + 1] = termOffsets[ord] + scratch.length;
+			}
+			for (int i = 0; i < size; i++) {
+				occurrences[i] = ((long) termOrds[(int) (occurrences[i] >>> 32)] << 32) | (occurrences[i] & 0xFFFFFFFFL);
+			}
+			Arrays.sort(occurrences, 0, size);
+			int[][] termPostings = new int[numTerms][];
+			FixedBitSet[] termBits = new FixedBitSet[numTerms];
+			int start = 0;
+			for (int ord = 0; ord < numTerms; ord++) {
+				int end = start;
+				while (end < size && (int) (occurrences[end] >>> 32) == ord) {
+					end++;
+				}
+				int[] docs = new int[end - start];
+				for (int i = start; i < end; i++) {
+					docs[i - start] = (int) occurrences[i];
+				}
+				termPostings[ord] = docs;
+				if (docs.length * DENSE_RATIO >= poolSize) {
+					FixedBitSet set = new FixedBitSet(poolSize);
+					for (int doc : docs) {
+						set.set(doc);
+					}
+					termBits[ord] = set;
+				}
+				start = end;
+			}
+			return new AxiomTermPool(ArrayUtil.copyOfSubArray(termBytes, 0, termOffsets[numTerms]), termOffsets,
+					termPostings, termBits, poolSize, docsSeen.cardinality());
+		}
+	}
+}
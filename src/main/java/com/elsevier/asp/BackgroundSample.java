@@ -0,0 +1,78 @@
+package com.elsevier.asp;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Bits;
+
+/**
+ * Docids of all live documents that have a value for the (docValues) id field,
+ * i.e. the documents the Axiomatic reranker may draw its random background
+ * documents from. Built once per index reader and shared by all requests.
+ */
+public class BackgroundSample {
+
+	private final int[] docIds;
+
+	private BackgroundSample(int[] docIds) {
+		this.docIds = docIds;
+	}
+
+	public static BackgroundSample build(IndexReader reader, String idField) throws IOException {
+		int[] docIds = new int[reader.numDocs()];
+		int size = 0;
+		for (LeafReaderContext context : reader.leaves()) {
+			LeafReader leaf = context.reader();
+			FieldInfo fieldInfo = leaf.getFieldInfos().fieldInfo(idField);
+			if (fieldInfo == null || fieldInfo.getDocValuesType() == DocValuesType.NONE) {
+				continue;
+			}
+			DocIdSetIterator it = docValuesIterator(leaf, fieldInfo);
+			Bits liveDocs = leaf.getLiveDocs();
+			for (int doc = it.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = it.nextDoc()) {
+				if (liveDocs != null && !liveDocs.get(doc)) {
+					continue;
+				}
+				if (size == docIds.length) {
+					docIds = Arrays.copyOf(docIds, size + 1024);
+				}
+				docIds[size++] = context.docBase + doc;
+			}
+		}
+		return new BackgroundSample(Arrays.copyOf(docIds, size));
+	}
+
+	private static DocIdSetIterator docValuesIterator(LeafReader leaf, FieldInfo fieldInfo) throws IOException {
+		String field = fieldInfo.name;
+		switch (fieldInfo.getDocValuesType()) {
+			case NUMERIC:
+				return DocValues.getNumeric(leaf, field);
+			case BINARY:
+				return DocValues.getBinary(leaf, field);
+			case SORTED:
+				return DocValues.getSorted(leaf, field);
+			case SORTED_NUMERIC:
+				return DocValues.getSortedNumeric(leaf, field);
+			case SORTED_SET:
+				return DocValues.getSortedSet(leaf, field);
+			default:
+				return DocIdSetIterator.empty();
+		}
+	}
+
+	public int size() {
+		return docIds.length;
+	}
+
+	public int sample(Random random) {
+		return docIds[random.nextInt(docIds.length)];
+	}
+}
@@ -0,0 +1,99 @@
+package com.elsevier.asp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.ContentStream;
+import org.apache.solr.common.util.Utils;
+
+/**
+ * One query of a batch request, with the id it is reported under.
+ */
+public class BatchQuery {
+
+	private final String qid;
+	private final String query;
+
+	public BatchQuery(String qid, String query) {
+		this.qid = qid;
+		this.query = query;
+	}
+
+	public String getQid() {
+		return qid;
+	}
+
+	public String getQuery() {
+		return query;
+	}
+
+	/**
+	 * Reads the queries of a batch from the request body. A JSON body is a
+	 * list of objects with qid and q, or an object with such a list under
+	 * queries. Any other body has one query per line, its qid then the query
+	 * separated by white space, as in a TREC topics file. Queries without a
+	 * qid are numbered from 1 in the order they are given.
+	 *
+	 * @throws SolrException if the JSON is not a list of queries
+	 */
+	public static List<BatchQuery> parse(Iterable<ContentStream> streams) throws IOException {
+		List<BatchQuery> queries = new ArrayList<BatchQuery>();
+		if (streams == null) {
+			return queries;
+		}
+		for (ContentStream stream : streams) {
+			String contentType = stream.getContentType();
+			if (contentType != null && contentType.contains("json")) {
+				try (InputStream in = stream.getStream()) {
+					parseJson(Utils.fromJSON(in), queries);
+				}
+			} else {
+				try (Reader reader = stream.getReader()) {
+					parseLines(new BufferedReader(reader), queries);
+				}
+			}
+		}
+		return queries;
+	}
+
+	private static void parseJson(Object json, List<BatchQuery> queries) {
+		if (json instanceof Map) {
+			json = ((Map<?,?>) json).get("queries");
+		}
+		if (!(json instanceof List)) {
+			throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+					"Batch body must be a list of queries with qid and q");
+		}
+		for (Object entry : (List<?>) json) {
+			if (!(entry instanceof Map) || ((Map<?,?>) entry).get("q") == null) {
+				throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Batch query without q: " + entry);
+			}
+			Map<?,?> map = (Map<?,?>) entry;
+			Object qid = map.get("qid");
+			queries.add(new BatchQuery((qid == null) ? Integer.toString(queries.size() + 1) : qid.toString(),
+					map.get("q").toString()));
+		}
+	}
+
+	private static void parseLines(BufferedReader reader, List<BatchQuery> queries) throws IOException {
+		String line;
+		while ((line = reader.readLine()) != null) {
+			line = line.trim();
+			if (line.isEmpty()) {
+				continue;
+			}
+			String[] parts = line.split("\\s+", 2);
+			if (parts.length < 2) {
+				queries.add(new BatchQuery(Integer.toString(queries.size() + 1), parts[0]));
+			} else {
+				queries.add(new BatchQuery(parts[0], parts[1]));
+			}
+		}
+	}
+}
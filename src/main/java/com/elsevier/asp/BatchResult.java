@@ -0,0 +1,77 @@
+package com.elsevier.asp;
+
+import java.io.IOException;
+
+import org.apache.solr.common.MapWriter;
+import org.apache.solr.common.SolrDocumentList;
+
+/**
+ * Ranking of one query of a batch request as written in the response, with
+ * either the whole ranking exported or one page of documents, or the error
+ * that kept it from being ranked.
+ */
+public class BatchResult implements MapWriter {
+
+	private final String qid;
+	private final Ranking ranking;
+	private final RankingExport export;
+	private final SolrDocumentList page;
+	private final String error;
+
+	public BatchResult(String qid, Ranking ranking, RankingExport export) {
+		this(qid, ranking, export, null, null);
+	}
+
+	public BatchResult(String qid, Ranking ranking, SolrDocumentList page) {
+		this(qid, ranking, null, page, null);
+	}
+
+	private BatchResult(String qid, Ranking ranking, RankingExport export, SolrDocumentList page, String error) {
+		this.qid = qid;
+		this.ranking = ranking;
+		this.export = export;
+		this.page = page;
+		this.error = error;
+	}
+
+	public static BatchResult failed(String qid, String error) {
+		return new BatchResult(qid, null, null, null, error);
+	}
+
+	public String getQid() {
+		return qid;
+	}
+
+	/** the whole ranking, null if the query failed or only a page was requested */
+	public RankingExport getExport() {
+		return export;
+	}
+
+	public boolean isFailed() {
+		return error != null;
+	}
+
+	@Override
+	public void writeMap(EntryWriter ew) throws IOException {
+		ew.put("qid", qid);
+		if (error != null) {
+			ew.put("error", error);
+			return;
+		}
+		ew.put("query_a", ranking.getQueryA());
+		ew.put("query_b", ranking.getQueryB());
+		ew.put("numFound", ranking.getNumFound());
+		ew.put("numFoundExact", ranking.isNumFoundExact());
+		if (ranking.getErrorMessage() != null) {
+			ew.put("error_message", ranking.getErrorMessage());
+		}
+		if (ranking.isPartial()) {
+			ew.put("partialResults", Boolean.TRUE);
+		}
+		if (export != null) {
+			ew.put("docs", export);
+		} else {
+			ew.put("docs", page);
+		}
+	}
+}
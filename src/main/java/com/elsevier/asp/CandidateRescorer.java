@@ -0,0 +1,102 @@
+package com.elsevier.asp;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.search.Weight;
+
+/**
+ * Scores a fixed set of candidate documents with another query, in the
+ * spirit of Lucene's QueryRescorer: the candidates are sorted by docid and
+ * each leaf's scorer is only advanced to them, so the cost depends on the
+ * number of candidates rather than on the length of the postings lists.
+ * Candidates the query does not match are dropped, which gives the same
+ * result as searching for the query filtered to the candidates.
+ */
+public class CandidateRescorer {
+
+	// same order as TopScoreDocCollector: higher scores first, then lower docids
+	private static final Comparator<ScoreDoc> BY_SCORE = (a, b) -> {
+		int cmp = Float.compare(b.score, a.score);
+		return (cmp != 0) ? cmp : Integer.compare(a.doc, b.doc);
+	};
+
+	private static final Comparator<ScoreDoc> BY_DOC = (a, b) -> Integer.compare(a.doc, b.doc);
+
+	public static TopDocs rescore(IndexSearcher searcher, Query query, ScoreDoc[] candidates)
+	    throws IOException {
+		return score(searcher, query, candidates, false);
+	}
+
+	/**
+	 * Adds the score of another query to the candidates' own scores. Candidates
+	 * the query does not match keep their score, so if the query is the rest of
+	 * a sum of SHOULD clauses (such as the SDM window components), the result
+	 * ranks the candidates by the score of the whole sum.
+	 */
+	public static TopDocs addScores(IndexSearcher searcher, Query query, ScoreDoc[] candidates)
+	    throws IOException {
+		return score(searcher, query, candidates, true);
+	}
+
+	private static TopDocs score(IndexSearcher searcher, Query query, ScoreDoc[] candidates,
+			boolean keepUnmatched) throws IOException {
+		ScoreDoc[] docs = candidates.clone();
+		Arrays.sort(docs, BY_DOC);
+		int numDocs = 0;
+		for (int i = 0; i < docs.length; i++) {
+			if (numDocs == 0 || docs[i].doc != docs[numDocs - 1].doc) {
+				docs[numDocs++] = docs[i];
+			}
+		}
+
+		Weight weight = searcher.createWeight(searcher.rewrite(query), ScoreMode.COMPLETE, 1.0f);
+		List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+		ScoreDoc[] hits = new ScoreDoc[numDocs];
+		int numHits = 0;
+		int i = 0;
+		while (i < numDocs) {
+			LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(docs[i].doc, leaves));
+			int leafEnd = leaf.docBase + leaf.reader().maxDoc();
+			Scorer scorer = weight.scorer(leaf);
+			if (scorer == null) {
+				// nothing in this segment matches, skip its candidates
+				for (; i < numDocs && docs[i].doc < leafEnd; i++) {
+					if (keepUnmatched) {
+						hits[numHits++] = new ScoreDoc(docs[i].doc, docs[i].score);
+					}
+				}
+				continue;
+			}
+			DocIdSetIterator it = scorer.iterator();
+			for (; i < numDocs && docs[i].doc < leafEnd; i++) {
+				int target = docs[i].doc - leaf.docBase;
+				if (it.docID() < target) {
+					it.advance(target);
+				}
+				if (it.docID() == target) {
+					float score = scorer.score();
+					hits[numHits++] = new ScoreDoc(docs[i].doc, keepUnmatched ? docs[i].score + score : score);
+				} else if (keepUnmatched) {
+					hits[numHits++] = new ScoreDoc(docs[i].doc, docs[i].score);
+				}
+			}
+		}
+
+		hits = Arrays.copyOf(hits, numHits);
+		Arrays.sort(hits, BY_SCORE);
+		return new TopDocs(new TotalHits(numHits, TotalHits.Relation.EQUAL_TO), hits);
+	}
+}
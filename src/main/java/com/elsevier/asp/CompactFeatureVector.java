@@ -0,0 +1,323 @@
+package com.elsevier.asp;
+
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.IntroSelector;
+import org.apache.lucene.util.IntroSorter;
+
+/**
+ * {@link FeatureVector} keyed by term ordinals from a shared
+ * {@link TermOrdinals}, with weights in parallel int/float arrays instead of
+ * a HashMap of boxed floats. Pruning selects the top k features in place
+ * rather than sorting all of them, and interpolation merges the two sparse
+ * vectors directly. Vectors combined with each other must share the same
+ * TermOrdinals.
+ */
+public class CompactFeatureVector extends FeatureVector {
+
+	private final TermOrdinals terms;
+	private int[] ords;
+	private float[] weights;
+	private int size;
+	// open addressing index from term ordinal to 1 + its position in ords/weights, 0 if free
+	private int[] slots;
+
+	public CompactFeatureVector(TermOrdinals terms) {
+		this(terms, 16);
+	}
+
+	private CompactFeatureVector(TermOrdinals terms, int capacity) {
+		this.terms = terms;
+		this.ords = new int[capacity];
+		this.weights = new float[capacity];
+		this.slots = new int[slotsSize(capacity)];
+	}
+
+	public TermOrdinals getTermOrdinals() {
+		return terms;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int ordinalAt(int index) {
+		return ords[index];
+	}
+
+	public float weightAt(int index) {
+		return weights[index];
+	}
+
+	@Override
+	public void addFeatureWeight(String term, float weight) {
+		addFeatureWeight(terms.ordinal(term), weight);
+	}
+
+	public void addFeatureWeight(int ord, float weight) {
+		int index = indexOf(ord);
+		if (index >= 0) {
+			weights[index] += weight;
+			return;
+		}
+		if (size == ords.length) {
+			ords = ArrayUtil.grow(ords, size + 1);
+			weights = ArrayUtil.grow(weights, size + 1);
+		}
+		ords[size] = ord;
+		weights[size] = weight;
+		size++;
+		if (2 * size > slots.length) {
+			rebuildSlots();
+		} else {
+			insertSlot(ord, size);
+		}
+	}
+
+	public float getFeatureWeight(int ord) {
+		int index = indexOf(ord);
+		return (index >= 0) ? weights[index] : 0.0f;
+	}
+
+	@Override
+	public FeatureVector pruneToSize(int k) {
+		// like FeatureVector, keep at least one feature
+		k = Math.max(k, 1);
+		if (size <= k) {
+			return this;
+		}
+		// move the k heaviest features (ties broken by ordinal) to the front, unordered
+		new IntroSelector() {
+			private int pivotOrd;
+			private float pivotWeight;
+
+			@Override
+			protected void setPivot(int i) {
+				pivotOrd = ords[i];
+				pivotWeight = weights[i];
+			}
+
+			@Override
+			protected int comparePivot(int j) {
+				return compareFeatures(pivotOrd, pivotWeight, ords[j], weights[j]);
+			}
+
+			@Override
+			protected void swap(int i, int j) {
+				swapFeatures(i, j);
+			}
+		}.select(0, size, k);
+		size = k;
+		ords = Arrays.copyOf(ords, size);
+		weights = Arrays.copyOf(weights, size);
+		rebuildSlots();
+		return this;
+	}
+
+	@Override
+	public FeatureVector scaleToUnitL2Norm() {
+		double norm = computeL2Norm();
+		for (int i = 0; i < size; i++) {
+			weights[i] = (float) (weights[i] / norm);
+		}
+		return this;
+	}
+
+	@Override
+	public FeatureVector scaleToUnitL1Norm() {
+		double norm = computeL1Norm();
+		for (int i = 0; i < size; i++) {
+			weights[i] = (float) (weights[i] / norm);
+		}
+		return this;
+	}
+
+	@Override
+	public Set<String> getFeatures() {
+		Set<String> features = new LinkedHashSet<String>();
+		for (int i = 0; i < size; i++) {
+			features.add(terms.term(ords[i]));
+		}
+		return features;
+	}
+
+	@Override
+	public float getFeatureWeight(String feature) {
+		int ord = terms.find(feature);
+		return (ord < 0) ? 0.0f : getFeatureWeight(ord);
+	}
+
+	@Override
+	public Iterator<String> iterator() {
+		return new Iterator<String>() {
+			private int next = 0;
+
+			@Override
+			public boolean hasNext() {
+				return next < size;
+			}
+
+			@Override
+			public String next() {
+				if (next >= size) {
+					throw new NoSuchElementException();
+				}
+				return terms.term(ords[next++]);
+			}
+		};
+	}
+
+	@Override
+	public boolean contains(String feature) {
+		int ord = terms.find(feature);
+		return ord >= 0 && indexOf(ord) >= 0;
+	}
+
+	@Override
+	public double computeL2Norm() {
+		double norm = 0.0;
+		for (int i = 0; i < size; i++) {
+			norm += Math.pow(weights[i], 2.0);
+		}
+		return Math.sqrt(norm);
+	}
+
+	@Override
+	public double computeL1Norm() {
+		double norm = 0.0;
+		for (int i = 0; i < size; i++) {
+			norm += Math.abs(weights[i]);
+		}
+		return norm;
+	}
+
+	public static CompactFeatureVector fromTerms(List<String> terms, TermOrdinals termOrdinals) {
+		CompactFeatureVector f = new CompactFeatureVector(termOrdinals);
+		for (String t : terms) {
+			f.addFeatureWeight(t, 1.0f);
+		}
+		return f;
+	}
+
+	public static CompactFeatureVector interpolate(CompactFeatureVector x, CompactFeatureVector y, float xWeight) {
+		if (x.terms != y.terms) {
+			throw new IllegalArgumentException("feature vectors must share their term ordinals");
+		}
+		CompactFeatureVector z = new CompactFeatureVector(x.terms, x.size + y.size);
+		for (int i = 0; i < x.size; i++) {
+			int ord = x.ords[i];
+			z.addFeatureWeight(ord, (float) (xWeight * x.weights[i] + (1.0 - xWeight) * y.getFeatureWeight(ord)));
+		}
+		for (int i = 0; i < y.size; i++) {
+			int ord = y.ords[i];
+			if (x.indexOf(ord) < 0) {
+				z.addFeatureWeight(ord, (float) (xWeight * 0.0f + (1.0 - xWeight) * y.weights[i]));
+			}
+		}
+		return z;
+	}
+
+	// VIEWING
+
+	@Override
+	public String toString() {
+		return this.toString(size);
+	}
+
+	@Override
+	public String toString(int k) {
+		DecimalFormat format = new DecimalFormat("#.#########");
+		CompactFeatureVector sorted = new CompactFeatureVector(terms, size);
+		for (int i = 0; i < size; i++) {
+			sorted.addFeatureWeight(ords[i], weights[i]);
+		}
+		sorted.sortByWeight();
+		StringBuilder b = new StringBuilder();
+		for (int i = 0; i < Math.min(k, sorted.size); i++) {
+			b.append(format.format(sorted.weights[i]) + " " + terms.term(sorted.ords[i]) + "\n");
+		}
+		return b.toString();
+	}
+
+	private void sortByWeight() {
+		new IntroSorter() {
+			private int pivotOrd;
+			private float pivotWeight;
+
+			@Override
+			protected void setPivot(int i) {
+				pivotOrd = ords[i];
+				pivotWeight = weights[i];
+			}
+
+			@Override
+			protected int comparePivot(int j) {
+				return compareFeatures(pivotOrd, pivotWeight, ords[j], weights[j]);
+			}
+
+			@Override
+			protected void swap(int i, int j) {
+				swapFeatures(i, j);
+			}
+		}.sort(0, size);
+		rebuildSlots();
+	}
+
+	// heavier features first, then lower ordinals
+	private static int compareFeatures(int ordA, float weightA, int ordB, float weightB) {
+		int cmp = Float.compare(weightB, weightA);
+		return (cmp != 0) ? cmp : Integer.compare(ordA, ordB);
+	}
+
+	private void swapFeatures(int i, int j) {
+		int ord = ords[i];
+		ords[i] = ords[j];
+		ords[j] = ord;
+		float weight = weights[i];
+		weights[i] = weights[j];
+		weights[j] = weight;
+	}
+
+	private int indexOf(int ord) {
+		int mask = slots.length - 1;
+		for (int i = hash(ord) & mask; slots[i] != 0; i = (i + 1) & mask) {
+			if (ords[slots[i] - 1] == ord) {
+				return slots[i] - 1;
+			}
+		}
+		return -1;
+	}
+
+	private void insertSlot(int ord, int slot) {
+		int mask = slots.length - 1;
+		int i = hash(ord) & mask;
+		while (slots[i] != 0) {
+			i = (i + 1) & mask;
+		}
+		slots[i] = slot;
+	}
+
+	private void rebuildSlots() {
+		slots = new int[slotsSize(size)];
+		for (int i = 0; i < size; i++) {
+			insertSlot(ords[i], i + 1);
+		}
+	}
+
+	// power of two with room for a load factor of at most 1/2
+	private static int slotsSize(int capacity) {
+		return Math.max(16, Integer.highestOneBit(Math.max(capacity, 1) * 4 - 1));
+	}
+
+	private static int hash(int ord) {
+		int h = ord * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
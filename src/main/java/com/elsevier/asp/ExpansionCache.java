@@ -0,0 +1,134 @@
+package com.elsevier.asp;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ScoreDoc;
+
+/**
+ * Bounded LRU cache of expanded queries (query B) for one index reader (see
+ * {@link SearcherResources}). An expansion only depends on the query terms,
+ * the feedback documents and the expansion parameters, so requests that
+ * differ in paging, returned fields, rerank mode or in filters that leave the
+ * feedback documents unchanged share one entry.
+ */
+public class ExpansionCache {
+
+	private static final int MAX_ENTRIES = 1024;
+
+	private final Map<Key,Entry> cache = new LinkedHashMap<Key,Entry>(64, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key,Entry> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	/**
+	 * Returns the cached query B for the key, or null. Hits add the time it
+	 * took to compute the expansion to the time saved.
+	 */
+	public BooleanQuery get(Key key, AnseriniMetrics metrics) {
+		Entry entry;
+		synchronized (cache) {
+			entry = cache.get(key);
+		}
+		if (entry == null) {
+			metrics.getExpansionCacheMisses().inc();
+			return null;
+		}
+		metrics.getExpansionCacheHits().inc();
+		metrics.getExpansionTimeSaved().inc(entry.computeMillis);
+		return entry.query;
+	}
+
+	public void put(Key key, BooleanQuery query, long computeMillis) {
+		synchronized (cache) {
+			cache.put(key, new Entry(query, computeMillis));
+		}
+	}
+
+	private static class Entry {
+		private final BooleanQuery query;
+		private final long computeMillis;
+
+		private Entry(BooleanQuery query, long computeMillis) {
+			this.query = query;
+			this.computeMillis = computeMillis;
+		}
+	}
+
+	/**
+	 * Identifies an expansion by reranker, field, analyzed query terms,
+	 * feedback documents (with their scores where the reranker weights by
+	 * them) and the reranker's parameters.
+	 */
+	public static class Key {
+
+		private final String reranker;
+		private final String fieldName;
+		private final List<String> queryTerms;
+		private final int[] docs;
+		private final float[] scores;
+		private final Object[] params;
+		private final int hashCode;
+
+		private Key(String reranker, String fieldName, List<String> queryTerms, int[] docs, float[] scores,
+				Object[] params) {
+			this.reranker = reranker;
+			this.fieldName = fieldName;
+			this.queryTerms = queryTerms;
+			this.docs = docs;
+			this.scores = scores;
+			this.params = params;
+			this.hashCode = Objects.hash(reranker, fieldName, queryTerms, Arrays.hashCode(docs),
+					Arrays.hashCode(scores), Arrays.hashCode(params));
+		}
+
+		/**
+		 * @param numDocs number of leading feedback documents the expansion reads
+		 * @param withScores whether the expansion depends on the scores of the feedback documents
+		 */
+		public static Key of(String reranker, String fieldName, List<String> queryTerms, ScoreDoc[] feedbackDocs,
+				int numDocs, boolean withScores, Object... params) {
+			numDocs = Math.min(numDocs, feedbackDocs.length);
+			int[] docs = new int[numDocs];
+			float[] scores = withScores ? new float[numDocs] : null;
+			for (int i = 0; i < numDocs; i++) {
+				docs[i] = feedbackDocs[i].doc;
+				if (withScores) {
+					scores[i] = feedbackDocs[i].score;
+				}
+			}
+			return new Key(reranker, fieldName, queryTerms, docs, scores, params);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return hashCode == other.hashCode
+					&& reranker.equals(other.reranker)
+					&& fieldName.equals(other.fieldName)
+					&& queryTerms.equals(other.queryTerms)
+					&& Arrays.equals(docs, other.docs)
+					&& Arrays.equals(scores, other.scores)
+					&& Arrays.equals(params, other.params);
+		}
+	}
+}
@@ -155,6 +155,9 @@ public class FeatureVector {
   }
 
   public static FeatureVector interpolate(FeatureVector x, FeatureVector y, float xWeight) {
+    if (x instanceof CompactFeatureVector && y instanceof CompactFeatureVector) {
+      return CompactFeatureVector.interpolate((CompactFeatureVector) x, (CompactFeatureVector) y, xWeight);
+    }
     FeatureVector z = new FeatureVector();
     Set<String> vocab = new HashSet<String>();
     vocab.addAll(x.getFeatures());
@@ -0,0 +1,69 @@
+package com.elsevier.asp;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.SortedMap;
+
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.StringHelper;
+
+/**
+ * Encoding of the terms of one document of a text field, with their
+ * frequencies, as stored in the field's forward index (the field of the
+ * same name with {@link #FIELD_SUFFIX}, see
+ * {@link ForwardIndexUpdateProcessorFactory}). Terms are written in sorted
+ * order, each as the length of the prefix it shares with the previous term,
+ * the rest of its bytes and its frequency, so that the terms of a document
+ * are read front to back with no more than one reused buffer.
+ */
+public class ForwardIndex {
+
+	/** the forward index of field f is stored in field f + FIELD_SUFFIX */
+	public static final String FIELD_SUFFIX = "_fwd";
+
+	public interface TermVisitor {
+		/**
+		 * @param term only valid until the next call
+		 */
+		void visit(BytesRef term, int freq) throws IOException;
+	}
+
+	private ForwardIndex() {
+	}
+
+	public static byte[] encode(SortedMap<BytesRef,Integer> termFrequencies) throws IOException {
+		ByteBuffersDataOutput out = new ByteBuffersDataOutput();
+		out.writeVInt(termFrequencies.size());
+		BytesRef previous = new BytesRef();
+		for (Map.Entry<BytesRef,Integer> e : termFrequencies.entrySet()) {
+			BytesRef term = e.getKey();
+			// terms are distinct and sorted, and not empty
+			int prefix = StringHelper.bytesDifference(previous, term);
+			out.writeVInt(prefix);
+			out.writeVInt(term.length - prefix);
+			out.writeBytes(term.bytes, term.offset + prefix, term.length - prefix);
+			out.writeVInt(e.getValue());
+			previous = term;
+		}
+		return out.toArrayCopy();
+	}
+
+	/** calls the visitor for each term of an encoded document, in term order */
+	public static void decode(BytesRef encoded, TermVisitor visitor) throws IOException {
+		ByteArrayDataInput in = new ByteArrayDataInput(encoded.bytes, encoded.offset, encoded.length);
+		BytesRefBuilder term = new BytesRefBuilder();
+		int numTerms = in.readVInt();
+		for (int i = 0; i < numTerms; i++) {
+			int prefix = in.readVInt();
+			int suffix = in.readVInt();
+			term.setLength(prefix);
+			term.grow(prefix + suffix);
+			in.readBytes(term.bytes(), prefix, suffix);
+			term.setLength(prefix + suffix);
+			visitor.visit(term.get(), in.readVInt());
+		}
+	}
+}
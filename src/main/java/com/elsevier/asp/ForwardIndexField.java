@@ -0,0 +1,57 @@
+package com.elsevier.asp;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.schema.BinaryField;
+import org.apache.solr.schema.SchemaField;
+
+/**
+ * Binary field type for forward indexes (see {@link ForwardIndex}), whose
+ * values are kept in BinaryDocValues. Solr's BinaryField can only store its
+ * values, which would put every forward index entry in the compressed
+ * stored fields that are loaded with each document.
+ */
+public class ForwardIndexField extends BinaryField {
+
+	@Override
+	public void checkSchemaField(SchemaField field) {
+		if (!field.hasDocValues() || field.multiValued()) {
+			throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
+					"Field " + field.getName() + " of type " + getTypeName() + " must be single valued with docValues");
+		}
+	}
+
+	@Override
+	public List<IndexableField> createFields(SchemaField field, Object value) {
+		List<IndexableField> fields = new ArrayList<IndexableField>(2);
+		if (field.stored()) {
+			fields.add(createField(field, value));
+		}
+		fields.add(new BinaryDocValuesField(field.getName(), toBytesRef(value)));
+		return fields;
+	}
+
+	// forward indexes are read by the rerankers, not returned with documents
+	@Override
+	public boolean useDocValuesAsStored() {
+		return false;
+	}
+
+	private static BytesRef toBytesRef(Object value) {
+		if (value instanceof byte[]) {
+			return new BytesRef((byte[]) value);
+		} else if (value instanceof ByteBuffer && ((ByteBuffer) value).hasArray()) {
+			ByteBuffer buffer = (ByteBuffer) value;
+			return new BytesRef(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+		}
+		// base64, as BinaryField takes strings
+		return new BytesRef(Base64.getDecoder().decode(value.toString()));
+	}
+}
@@ -0,0 +1,137 @@
+package com.elsevier.asp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.TermToBytesRefAttribute;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.schema.CopyField;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.update.AddUpdateCommand;
+import org.apache.solr.update.processor.UpdateRequestProcessor;
+import org.apache.solr.update.processor.UpdateRequestProcessorFactory;
+
+/**
+ * Writes the forward index of text fields as documents are added: each
+ * field listed in the fields init argument (para_text_bm and para_text_ql
+ * by default) is analyzed as it will be indexed, including values copied
+ * to it by copyField, and its terms and their frequencies are put in the
+ * field's forward index field (see {@link ForwardIndex}), if the schema has
+ * one. Goes after DistributedUpdateProcessorFactory in the update chain,
+ * where atomic updates have been merged into whole documents, and before
+ * RunUpdateProcessorFactory.
+ */
+public class ForwardIndexUpdateProcessorFactory extends UpdateRequestProcessorFactory {
+
+	private List<String> fieldNames = Arrays.asList("para_text_bm", "para_text_ql");
+
+	@Override
+	public void init(@SuppressWarnings("rawtypes") NamedList args) {
+		Object fields = (args == null) ? null : args.get("fields");
+		if (fields instanceof Collection) {
+			fieldNames = new ArrayList<String>();
+			for (Object field : (Collection<?>) fields) {
+				fieldNames.add(field.toString());
+			}
+		} else if (fields != null) {
+			fieldNames = Arrays.asList(fields.toString().split(","));
+		}
+	}
+
+	@Override
+	public UpdateRequestProcessor getInstance(SolrQueryRequest req, SolrQueryResponse rsp,
+			UpdateRequestProcessor next) {
+		return new UpdateRequestProcessor(next) {
+			@Override
+			public void processAdd(AddUpdateCommand cmd) throws IOException {
+				addForwardIndexes(cmd.getSolrInputDocument(), req.getSchema());
+				super.processAdd(cmd);
+			}
+		};
+	}
+
+	private void addForwardIndexes(SolrInputDocument doc, IndexSchema schema) throws IOException {
+		for (String fieldName : fieldNames) {
+			SchemaField field = schema.getFieldOrNull(fieldName);
+			String forwardIndexField = fieldName + ForwardIndex.FIELD_SUFFIX;
+			if (field == null || schema.getFieldOrNull(forwardIndexField) == null) {
+				continue;
+			}
+			List<Object> values = getIndexedValues(doc, fieldName, schema);
+			if (values == null) {
+				continue;
+			}
+			Analyzer analyzer = field.getType().getIndexAnalyzer();
+			SortedMap<BytesRef,Integer> termFrequencies = new TreeMap<BytesRef,Integer>();
+			for (Object value : values) {
+				try (TokenStream stream = analyzer.tokenStream(fieldName, value.toString())) {
+					TermToBytesRefAttribute termAttr = stream.addAttribute(TermToBytesRefAttribute.class);
+					stream.reset();
+					while (stream.incrementToken()) {
+						BytesRef term = termAttr.getBytesRef();
+						if (term.length == 0) {
+							continue;
+						}
+						// the attribute's bytes are reused, only new terms are copied
+						Integer freq = termFrequencies.get(term);
+						if (freq == null) {
+							termFrequencies.put(BytesRef.deepCopyOf(term), 1);
+						} else {
+							termFrequencies.put(term, freq + 1);
+						}
+					}
+					stream.end();
+				}
+			}
+			doc.setField(forwardIndexField, ForwardIndex.encode(termFrequencies));
+		}
+	}
+
+	/**
+	 * The values the field will be indexed with: its own, and those copied to
+	 * it from other fields of the document by copyField, cut to maxChars as
+	 * Solr does. Returns null if there are none, or if the document is an
+	 * atomic update of the field, whose new values are only known once
+	 * DistributedUpdateProcessorFactory has merged it with the stored document.
+	 */
+	private static List<Object> getIndexedValues(SolrInputDocument doc, String fieldName, IndexSchema schema) {
+		List<Object> values = new ArrayList<Object>();
+		for (SolrInputField inputField : doc) {
+			Collection<Object> fieldValues = inputField.getValues();
+			if (fieldValues == null) {
+				continue;
+			}
+			if (fieldName.equals(inputField.getName())) {
+				values.addAll(fieldValues);
+			}
+			for (CopyField copyField : schema.getCopyFieldsList(inputField.getName())) {
+				if (!fieldName.equals(copyField.getDestination().getName())) {
+					continue;
+				}
+				for (Object value : fieldValues) {
+					values.add((value instanceof String) ? copyField.getLimitedValue((String) value) : value);
+				}
+			}
+		}
+		for (Object value : values) {
+			if (value instanceof Map) {
+				return null;
+			}
+		}
+		return values.isEmpty() ? null : values;
+	}
+}
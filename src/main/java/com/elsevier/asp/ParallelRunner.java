@@ -0,0 +1,67 @@
+package com.elsevier.asp;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs numbered work items on a shared executor with at most maxWorkers of
+ * them in flight for one caller. The calling thread works through the items
+ * too, so a saturated executor degrades to running on the caller rather than
+ * blocking it, and workers that only start after all items are claimed exit
+ * immediately. Items write their results into slots owned by the caller, so
+ * the merge order stays the same as in a serial run. The first exception or
+ * error an item throws is rethrown as it is, once running items finish.
+ */
+public class ParallelRunner {
+
+	public interface ItemTask {
+		void run(int item) throws Exception;
+	}
+
+	public static void run(ExecutorService executor, int numItems, int maxWorkers, ItemTask task)
+			throws Exception {
+		int numWorkers = Math.min(numItems, maxWorkers);
+		if (executor == null || numWorkers <= 1) {
+			for (int item = 0; item < numItems; item++) {
+				task.run(item);
+			}
+			return;
+		}
+		AtomicInteger nextItem = new AtomicInteger();
+		CountDownLatch itemsDone = new CountDownLatch(numItems);
+		// Errors too, so that one thrown on a pooled thread is not lost with it
+		AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Runnable worker = () -> {
+			int item;
+			while ((item = nextItem.getAndIncrement()) < numItems) {
+				try {
+					if (failure.get() == null) {
+						task.run(item);
+					}
+				} catch (Throwable t) {
+					failure.compareAndSet(null, t);
+				} finally {
+					itemsDone.countDown();
+				}
+			}
+		};
+		for (int i = 1; i < numWorkers; i++) {
+			try {
+				executor.execute(worker);
+			} catch (RejectedExecutionException e) {
+				break;
+			}
+		}
+		worker.run();
+		itemsDone.await();
+		Throwable t = failure.get();
+		if (t instanceof Error) {
+			throw (Error) t;
+		} else if (t != null) {
+			throw (Exception) t;
+		}
+	}
+}
@@ -5,9 +5,13 @@ import java.util.Map;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.queries.intervals.IntervalQuery;
+import org.apache.lucene.queries.intervals.Intervals;
+import org.apache.lucene.queries.intervals.IntervalsSource;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.PhraseQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.spans.SpanNearQuery;
@@ -15,63 +19,167 @@ import org.apache.lucene.search.spans.SpanQuery;
 import org.apache.lucene.search.spans.SpanTermQuery;
 
 public class QueryBuilderFactory {
+
+	// most positions allowed between the two terms of an SDM window
+	private static final int ORDERED_WINDOW_SLOP = 1;
+	private static final int UNORDERED_WINDOW_SLOP = 8;
 	
-	public Query buildBagOfWordsQuery(String queryString, String[] filters, 
-			String fieldName, Analyzer analyzer) {
-		List<String> tokens = AnalyzerUtils.tokenizeQuery(queryString, fieldName, analyzer);
-		BooleanQuery.Builder builder = new BooleanQuery.Builder();
-		for (String token : tokens) {
-			builder.add(new TermQuery(new Term(fieldName, token)), BooleanClause.Occur.SHOULD);
-		}
-		return applyFilters(builder.build(), filters);
+	/**
+	 * Builders leave filtering to the caller, which intersects filter queries
+	 * through the filterCache (see RerankPipeline). Those taking a query
+	 * string analyze it with AnalyzerUtils.tokenizeQuery.
+	 */
+	public Query buildBagOfWordsQuery(String queryString, String fieldName, Analyzer analyzer) {
+		return buildBagOfWordsQuery(AnalyzerUtils.tokenizeQuery(queryString, fieldName, analyzer), fieldName);
+	}
+
+	public Query buildBagOfWordsQuery(List<String> tokens, String fieldName) {
+		return buildTermsComponent(tokens, fieldName);
 	}
 	
-	public Query buildSeqDepModelQuery(String queryString, String[] filters, 
+	public Query buildSeqDepModelQuery(String queryString, 
 			String fieldName, Analyzer analyzer, Map<String,Float> params) {
-		List<String> tokens = AnalyzerUtils.tokenizeQuery(queryString, fieldName, analyzer);
+		return buildSeqDepModelQuery(queryString, fieldName, analyzer, params, "span");
+	}
+
+	/**
+	 * @param impl how the window components are scored: span (SpanNearQuery,
+	 *        as Anserini does), interval (IntervalQuery) or phrase (sloppy
+	 *        PhraseQuery)
+	 */
+	public Query buildSeqDepModelQuery(String queryString, 
+			String fieldName, Analyzer analyzer, Map<String,Float> params, String impl) {
+		return buildSeqDepModelQuery(AnalyzerUtils.tokenizeQuery(queryString, fieldName, analyzer),
+				fieldName, params, impl);
+	}
+
+	public Query buildSeqDepModelQuery(List<String> tokens, String fieldName, 
+			Map<String,Float> params, String impl) {
 		// terms component
+		Query termsQuery = buildTermsComponent(tokens, fieldName);
+		if (tokens.size() == 1) {
+			return termsQuery;
+		}
+		// weight different components according to params
+		BooleanQuery.Builder builder = new BooleanQuery.Builder();
+		builder.add(new BoostQuery(termsQuery, 
+				params.get("termWeight")), BooleanClause.Occur.SHOULD);
+		addWindowComponents(tokens, fieldName, params, impl, builder);
+		return builder.build();
+	}
+
+	public Query buildSeqDepModelTermsQuery(String queryString, 
+			String fieldName, Analyzer analyzer, Map<String,Float> params) {
+		return buildSeqDepModelTermsQuery(AnalyzerUtils.tokenizeQuery(queryString, fieldName, analyzer),
+				fieldName, params);
+	}
+
+	/**
+	 * First phase of two-phase SDM: the terms component of
+	 * buildSeqDepModelQuery alone, weighted the same way.
+	 */
+	public Query buildSeqDepModelTermsQuery(List<String> tokens, String fieldName, 
+			Map<String,Float> params) {
+		Query termsQuery = buildTermsComponent(tokens, fieldName);
+		if (tokens.size() > 1) {
+			termsQuery = new BoostQuery(termsQuery, params.get("termWeight"));
+		}
+		return termsQuery;
+	}
+
+	public Query buildSeqDepModelWindowQuery(String queryString, String fieldName, 
+			Analyzer analyzer, Map<String,Float> params, String impl) {
+		return buildSeqDepModelWindowQuery(AnalyzerUtils.tokenizeQuery(queryString, fieldName, analyzer),
+				fieldName, params, impl);
+	}
+
+	/**
+	 * Second phase of two-phase SDM: the weighted window components of
+	 * buildSeqDepModelQuery, to be added to the scores of the terms query for
+	 * its top documents. Returns null for single token queries, which have no
+	 * windows.
+	 */
+	public Query buildSeqDepModelWindowQuery(List<String> tokens, String fieldName, 
+			Map<String,Float> params, String impl) {
+		if (tokens.size() < 2) {
+			return null;
+		}
+		BooleanQuery.Builder builder = new BooleanQuery.Builder();
+		addWindowComponents(tokens, fieldName, params, impl, builder);
+		return builder.build();
+	}
+
+	private Query buildTermsComponent(List<String> tokens, String fieldName) {
 		BooleanQuery.Builder termsBuilder = new BooleanQuery.Builder();
 		for (String token : tokens) {
 			termsBuilder.add(new TermQuery(new Term(fieldName, token)), BooleanClause.Occur.SHOULD);
 		}
-		if (tokens.size() == 1) {
-			return termsBuilder.build();
-		}
+		return termsBuilder.build();
+	}
+
+	private void addWindowComponents(List<String> tokens, String fieldName, Map<String,Float> params,
+			String impl, BooleanQuery.Builder builder) {
 		// pairs components
 		BooleanQuery.Builder orderedWindowBuilder = new BooleanQuery.Builder();
 		BooleanQuery.Builder unorderedWindowBuilder = new BooleanQuery.Builder();
+		if ("interval".equals(impl)) {
+			addIntervalWindows(tokens, fieldName, orderedWindowBuilder, unorderedWindowBuilder);
+		} else if ("phrase".equals(impl)) {
+			addPhraseWindows(tokens, fieldName, orderedWindowBuilder, unorderedWindowBuilder);
+		} else {
+			addSpanWindows(tokens, fieldName, orderedWindowBuilder, unorderedWindowBuilder);
+		}
+		builder.add(new BoostQuery(orderedWindowBuilder.build(), 
+				params.get("orderedWindowWeight")), BooleanClause.Occur.SHOULD);
+		builder.add(new BoostQuery(unorderedWindowBuilder.build(),
+				params.get("unorderedWindowWeight")), BooleanClause.Occur.SHOULD);
+	}
+
+	private void addSpanWindows(List<String> tokens, String fieldName,
+			BooleanQuery.Builder orderedWindowBuilder, BooleanQuery.Builder unorderedWindowBuilder) {
 		for (int i = 0; i < tokens.size() - 1; i++) {
 			SpanTermQuery t1 = new SpanTermQuery(new Term(fieldName, tokens.get(i)));
 			SpanTermQuery t2 = new SpanTermQuery(new Term(fieldName, tokens.get(i+1)));
-			SpanNearQuery orderedQuery = new SpanNearQuery(new SpanQuery[] {t1, t2}, 1, true);
-			SpanNearQuery unorderedQuery = new SpanNearQuery(new SpanQuery[] {t1, t2}, 8, false);
+			SpanNearQuery orderedQuery = new SpanNearQuery(new SpanQuery[] {t1, t2}, ORDERED_WINDOW_SLOP, true);
+			SpanNearQuery unorderedQuery = new SpanNearQuery(new SpanQuery[] {t1, t2}, UNORDERED_WINDOW_SLOP, false);
 			
 			orderedWindowBuilder.add(orderedQuery, BooleanClause.Occur.SHOULD);
 			unorderedWindowBuilder.add(unorderedQuery, BooleanClause.Occur.SHOULD);
 		}
-		// weight different components according to params
-		BooleanQuery.Builder builder = new BooleanQuery.Builder();
-		builder.add(new BoostQuery(termsBuilder.build(), 
-				params.get("termWeight")), BooleanClause.Occur.SHOULD);
-		builder.add(new BoostQuery(orderedWindowBuilder.build(), 
-				params.get("orderedWindowWeight")), BooleanClause.Occur.SHOULD);
-		builder.add(new BoostQuery(unorderedWindowBuilder.build(),
-				params.get("unorderedWindowWeight")), BooleanClause.Occur.SHOULD);
-		return applyFilters(builder.build(), filters);
 	}
-	
-	private Query applyFilters(Query query, String[] filters) {
-		if (filters == null || filters.length == 0) return query;
-		BooleanQuery.Builder filterBuilder = new BooleanQuery.Builder();
-		for (String nvp : filters) {
-			System.out.println("nvp=" + nvp);
-			String[] nvpElements = nvp.split(":");
-			filterBuilder.add(new TermQuery(new Term(nvpElements[0], nvpElements[1])), 
+
+	// matches the same documents as the span windows, but IntervalQuery scores
+	// with its own saturation function of the match frequency rather than the
+	// field's similarity
+	private void addIntervalWindows(List<String> tokens, String fieldName,
+			BooleanQuery.Builder orderedWindowBuilder, BooleanQuery.Builder unorderedWindowBuilder) {
+		IntervalsSource[] terms = new IntervalsSource[tokens.size()];
+		for (int i = 0; i < tokens.size(); i++) {
+			terms[i] = Intervals.term(tokens.get(i));
+		}
+		for (int i = 0; i < tokens.size() - 1; i++) {
+			orderedWindowBuilder.add(new IntervalQuery(fieldName,
+					Intervals.maxgaps(ORDERED_WINDOW_SLOP, Intervals.ordered(terms[i], terms[i+1]))),
+					BooleanClause.Occur.SHOULD);
+			unorderedWindowBuilder.add(new IntervalQuery(fieldName,
+					Intervals.maxgaps(UNORDERED_WINDOW_SLOP, Intervals.unordered(terms[i], terms[i+1]))),
+					BooleanClause.Occur.SHOULD);
+		}
+	}
+
+	// the ordered window matches the same documents as the span one, but a
+	// sloppy phrase counts its window frequency differently, so scores differ;
+	// a sloppy phrase charges 2 extra for reversed pairs, so the unordered window
+	// only matches them with at most UNORDERED_WINDOW_SLOP - 2 positions between
+	private void addPhraseWindows(List<String> tokens, String fieldName,
+			BooleanQuery.Builder orderedWindowBuilder, BooleanQuery.Builder unorderedWindowBuilder) {
+		for (int i = 0; i < tokens.size() - 1; i++) {
+			String t1 = tokens.get(i);
+			String t2 = tokens.get(i+1);
+			orderedWindowBuilder.add(new PhraseQuery(ORDERED_WINDOW_SLOP, fieldName, t1, t2),
+					BooleanClause.Occur.SHOULD);
+			unorderedWindowBuilder.add(new PhraseQuery(UNORDERED_WINDOW_SLOP, fieldName, t1, t2),
 					BooleanClause.Occur.SHOULD);
 		}
-		BooleanQuery.Builder filteredQueryBuilder = new BooleanQuery.Builder();
-		filteredQueryBuilder.add(query, BooleanClause.Occur.MUST);
-		filteredQueryBuilder.add(filterBuilder.build(), BooleanClause.Occur.FILTER);
-		return filteredQueryBuilder.build();
 	}
 }
@@ -0,0 +1,77 @@
+package com.elsevier.asp;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.lucene.analysis.Analyzer;
+
+/**
+ * Analyzed queries of recent requests, held by the request handler of a
+ * core and released with it. Analyzers are compared by identity, so a
+ * schema reload starts over with new entries.
+ */
+public class QueryTokenCache {
+
+	private static final int MAX_CACHED_QUERIES = 1024;
+
+	private final Map<Key,List<String>> cache = new LinkedHashMap<Key,List<String>>(64, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key,List<String>> eldest) {
+			return size() > MAX_CACHED_QUERIES;
+		}
+	};
+
+	/**
+	 * Returns the tokens of AnalyzerUtils.tokenizeQuery, from the cache when
+	 * the same query was analyzed recently. The list is unmodifiable, as it
+	 * may be shared with other requests.
+	 */
+	public List<String> tokenizeQuery(String queryString, String fieldName, Analyzer analyzer) {
+		Key key = new Key(queryString, fieldName, analyzer);
+		List<String> queryTokens;
+		synchronized (cache) {
+			queryTokens = cache.get(key);
+		}
+		if (queryTokens == null) {
+			queryTokens = Collections.unmodifiableList(AnalyzerUtils.tokenizeQuery(queryString, fieldName, analyzer));
+			synchronized (cache) {
+				cache.put(key, queryTokens);
+			}
+		}
+		return queryTokens;
+	}
+
+	private static class Key {
+
+		private final String queryString;
+		private final String fieldName;
+		private final Analyzer analyzer;
+
+		private Key(String queryString, String fieldName, Analyzer analyzer) {
+			this.queryString = queryString;
+			this.fieldName = fieldName;
+			this.analyzer = analyzer;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(queryString, fieldName) * 31 + System.identityHashCode(analyzer);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return analyzer == other.analyzer
+					&& Objects.equals(queryString, other.queryString)
+					&& fieldName.equals(other.fieldName);
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package com.elsevier.asp;
+
+import org.apache.lucene.search.ScoreDoc;
+
+/**
+ * Outcome of {@link RerankPipeline} for one query: the reranked documents
+ * with the queries that produced them. Instances are shared through the
+ * result cache and must not be modified.
+ */
+public class Ranking {
+
+	private final String queryA;
+	private final String queryB;
+	private final ScoreDoc[] documents;
+	private final long numFound;
+	private final String errorMessage;
+	private final boolean partial;
+	private final boolean numFoundExact;
+
+	public Ranking(String queryA, String queryB, ScoreDoc[] documents, long numFound, String errorMessage) {
+		this(queryA, queryB, documents, numFound, errorMessage, false);
+	}
+
+	public Ranking(String queryA, String queryB, ScoreDoc[] documents, long numFound, String errorMessage,
+			boolean partial) {
+		this(queryA, queryB, documents, numFound, true, errorMessage, partial);
+	}
+
+	public Ranking(String queryA, String queryB, ScoreDoc[] documents, long numFound, boolean numFoundExact,
+			String errorMessage, boolean partial) {
+		this.queryA = queryA;
+		this.queryB = queryB;
+		this.documents = documents;
+		this.numFound = numFound;
+		this.numFoundExact = numFoundExact;
+		this.errorMessage = errorMessage;
+		this.partial = partial;
+	}
+
+	public String getQueryA() {
+		return queryA;
+	}
+
+	public String getQueryB() {
+		return queryB;
+	}
+
+	public ScoreDoc[] getDocuments() {
+		return documents;
+	}
+
+	/** number of documents matched by query A, a lower bound unless {@link #isNumFoundExact()} */
+	public long getNumFound() {
+		return numFound;
+	}
+
+	/** false if query A stopped counting hits at minExactCount */
+	public boolean isNumFoundExact() {
+		return numFoundExact;
+	}
+
+	public String getErrorMessage() {
+		return errorMessage;
+	}
+
+	/** true if the time budget ran out and the documents are not (fully) reranked */
+	public boolean isPartial() {
+		return partial;
+	}
+}
@@ -0,0 +1,102 @@
+package com.elsevier.asp;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.solr.common.IteratorWriter;
+import org.apache.solr.common.MapWriter;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.schema.StrField;
+import org.apache.solr.search.SolrIndexSearcher;
+
+/**
+ * A whole ranking written out as it is streamed to the client, one document
+ * at a time: its docid, the values of single valued string fields read from
+ * docValues, and its score. Nothing but the ranking itself is held in
+ * memory, however many documents it has, and no stored fields are loaded.
+ */
+public class RankingExport implements IteratorWriter {
+
+	public interface RowWriter {
+		/**
+		 * @param rank 1 based position in the ranking
+		 * @param values values of the export fields, null where a document has none
+		 */
+		void write(int rank, ScoreDoc doc, String[] values) throws IOException;
+	}
+
+	private final SolrIndexSearcher searcher;
+	private final String[] fieldNames;
+	private final ScoreDoc[] documents;
+
+	/**
+	 * @throws SolrException if a field is not a single valued string field with docValues
+	 */
+	public RankingExport(SolrIndexSearcher searcher, String[] fieldNames, ScoreDoc[] documents) {
+		IndexSchema schema = searcher.getSchema();
+		for (String fieldName : fieldNames) {
+			SchemaField field = schema.getFieldOrNull(fieldName);
+			if (field == null || !field.hasDocValues() || field.multiValued()
+					|| !(field.getType() instanceof StrField)) {
+				throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Can not export " + fieldName
+						+ ", export fields must be single valued string fields with docValues");
+			}
+		}
+		this.searcher = searcher;
+		this.fieldNames = fieldNames;
+		this.documents = documents;
+	}
+
+	public String[] getFieldNames() {
+		return fieldNames;
+	}
+
+	public int size() {
+		return documents.length;
+	}
+
+	/** writes the documents in ranking order */
+	public void forEach(RowWriter writer) throws IOException {
+		List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+		// docValues iterators only move forward, so one is kept per leaf and
+		// field and only replaced when the ranking goes back to a lower docid
+		SortedDocValues[][] iterators = new SortedDocValues[leaves.size()][fieldNames.length];
+		String[] values = new String[fieldNames.length];
+		for (int i = 0; i < documents.length; i++) {
+			int doc = documents[i].doc;
+			int leafIndex = ReaderUtil.subIndex(doc, leaves);
+			LeafReaderContext leaf = leaves.get(leafIndex);
+			int leafDoc = doc - leaf.docBase;
+			for (int f = 0; f < fieldNames.length; f++) {
+				SortedDocValues docValues = iterators[leafIndex][f];
+				if (docValues == null || docValues.docID() > leafDoc) {
+					docValues = DocValues.getSorted(leaf.reader(), fieldNames[f]);
+					iterators[leafIndex][f] = docValues;
+				}
+				values[f] = docValues.advanceExact(leafDoc)
+						? docValues.lookupOrd(docValues.ordValue()).utf8ToString() : null;
+			}
+			writer.write(i + 1, documents[i], values);
+		}
+	}
+
+	@Override
+	public void writeIter(ItemWriter iw) throws IOException {
+		forEach((rank, doc, values) -> iw.add((MapWriter) ew -> {
+			ew.put("docid", doc.doc);
+			for (int f = 0; f < fieldNames.length; f++) {
+				if (values[f] != null) {
+					ew.put(fieldNames[f], values[f]);
+				}
+			}
+			ew.put("score", doc.score);
+		}));
+	}
+}
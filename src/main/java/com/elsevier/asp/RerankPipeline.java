@@ -0,0 +1,296 @@
+package com.elsevier.asp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.TotalHits;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.TimeSource;
+import org.apache.solr.request.LocalSolrQueryRequest;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.search.QParser;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.search.SyntaxError;
+import org.apache.solr.util.TimeOut;
+
+/**
+ * Runs query A and reranks its results with query B for one set of request
+ * parameters. Pagination and field loading are left to the caller, so the
+ * same ranking can serve every page of a query, and can be recomputed
+ * against a new searcher when the result cache is autowarmed.
+ */
+public class RerankPipeline {
+
+	// what IndexSearcher.search(Query, int) counts exactly, and so the default before minExactCount
+	private static final int DEFAULT_MIN_EXACT_COUNT = 1000;
+
+	private final ExecutorService executor;
+	private final int maxTasksPerRequest;
+	private final AdmissionController admission;
+	private final QueryTokenCache tokenCache;
+
+	/**
+	 * @param executor shared executor for parallel reranking, or null to run on the calling thread
+	 * @param maxTasksPerRequest most tasks one request may have running on the executor at the same time
+	 */
+	public RerankPipeline(ExecutorService executor, int maxTasksPerRequest) {
+		this(executor, maxTasksPerRequest, null);
+	}
+
+	/**
+	 * @param admission limits on concurrent requests per rtype, or null for none
+	 */
+	public RerankPipeline(ExecutorService executor, int maxTasksPerRequest, AdmissionController admission) {
+		this(executor, maxTasksPerRequest, admission, null);
+	}
+
+	/**
+	 * @param tokenCache analyzed queries of the core, or null to analyze every query
+	 */
+	public RerankPipeline(ExecutorService executor, int maxTasksPerRequest, AdmissionController admission,
+			QueryTokenCache tokenCache) {
+		this.executor = executor;
+		this.maxTasksPerRequest = maxTasksPerRequest;
+		this.admission = admission;
+		this.tokenCache = tokenCache;
+	}
+
+	/**
+	 * Requests that find no free rm3 or ax permit within the queue timeout
+	 * are ranked by query A alone (as with rtype=id), which is reported in
+	 * the ranking's error message; requests that find no id permit either
+	 * are rejected.
+	 *
+	 * @param filters the request's fq, as returned by {@link #parseFilters}
+	 * @param timings where to record the time spent in each step
+	 */
+	public Ranking run(SolrParams reqParams, List<Query> filters, SolrIndexSearcher searcher, StageTimings timings)
+			throws Exception {
+		String rtype = reqParams.get("rtype", "rm3");    // [rm3, ax, id]
+		if (admission == null) {
+			return run(reqParams, rtype, filters, searcher, timings);
+		}
+		AdmissionController.Permit permit;
+		String degradedFrom = null;
+		try (StageTimings.Stage stage = timings.start("admission")) {
+			permit = admission.acquire(rtype);
+			if (permit == null && !"id".equals(rtype)) {
+				degradedFrom = rtype;
+				rtype = "id";
+				permit = admission.acquire(rtype);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SolrException(SolrException.ErrorCode.SERVICE_UNAVAILABLE, "Interrupted waiting to rerank", e);
+		}
+		AnseriniMetrics metrics = timings.getMetrics();
+		if (permit == null) {
+			metrics.getRerankRejected().inc();
+			throw new SolrException(SolrException.ErrorCode.SERVICE_UNAVAILABLE,
+					"Too many concurrent reranking requests, try again later");
+		}
+		try (AdmissionController.Permit p = permit) {
+			Ranking ranking = run(reqParams, rtype, filters, searcher, timings);
+			if (degradedFrom == null) {
+				return ranking;
+			}
+			metrics.getRerankDegraded().inc();
+			return new Ranking(ranking.getQueryA(), ranking.getQueryB(), ranking.getDocuments(),
+					ranking.getNumFound(), ranking.isNumFoundExact(), "rtype=" + degradedFrom
+							+ " not run, too many concurrent requests; results are those of query A",
+					ranking.isPartial());
+		}
+	}
+
+	private Ranking run(SolrParams reqParams, String rtype, List<Query> filters, SolrIndexSearcher searcher,
+			StageTimings timings)
+			throws Exception {
+
+		// time budget for the whole ranking, checked by the rerankers
+		long timeAllowedMillis = reqParams.getLong("rerank.timeAllowed", reqParams.getLong("timeAllowed", -1L));
+		TimeOut timeAllowed = (timeAllowedMillis > 0)
+				? new TimeOut(timeAllowedMillis, TimeUnit.MILLISECONDS, TimeSource.NANO_TIME) : null;
+
+		String q = reqParams.get("q");
+		String similarity = reqParams.get("sim", "bm");  // [bm, ql]
+		String qtype = reqParams.get("qtype", "bow");    // [bow, sdm, sdm2]
+		int rerankCutoff = Integer.valueOf(reqParams.get("rerankCutoff", "50"));
+		// hits are counted exactly up to this many, beyond it Lucene skips blocks that can not make the top documents
+		int minExactCount = reqParams.getInt("minExactCount", DEFAULT_MIN_EXACT_COUNT);
+
+		// step 2: analyze query
+		String fieldName = "para_text_" + similarity;
+		Analyzer analyzer = searcher.getSchema().getFieldType(fieldName).getQueryAnalyzer();
+
+		// step 3: parse query and transform to query A, analyzing it once for all steps
+		QueryBuilderFactory qbf = new QueryBuilderFactory();
+		Query query = null;
+		Query windowQuery = null;
+		List<String> tokens;
+		try (StageTimings.Stage stage = timings.start("queryA.build")) {
+			tokens = (tokenCache == null) ? AnalyzerUtils.tokenizeQuery(q, fieldName, analyzer)
+					: tokenCache.tokenizeQuery(q, fieldName, analyzer);
+			if ("bow".equals(qtype)) {         // "bow"
+				query = qbf.buildBagOfWordsQuery(tokens, fieldName);
+			} else if ("sdm2".equals(qtype)) { // "sdm2"
+				Map<String,Float> params = getSeqDepModelParams(reqParams);
+				query = qbf.buildSeqDepModelTermsQuery(tokens, fieldName, params);
+				windowQuery = qbf.buildSeqDepModelWindowQuery(tokens, fieldName, params,
+						reqParams.get("sdm.impl", "span"));
+			} else {                           // "sdm"
+				query = qbf.buildSeqDepModelQuery(tokens, fieldName, getSeqDepModelParams(reqParams),
+						reqParams.get("sdm.impl", "span"));
+			}
+		}
+
+		// filter queries are intersected as cached DocSets, not scored with query A
+		Query filter;
+		try (StageTimings.Stage stage = timings.start("filters")) {
+			filter = getFilter(filters, searcher);
+		}
+
+		// step 4: analyze results of query A and build query B
+		TopDocs topDocs;
+		try (StageTimings.Stage stage = timings.start("queryA.search")) {
+			// the queue is allocated up front, so it is no larger than the index even
+			// for a large export cutoff, and all of its hits are counted exactly
+			int numHits = Math.min(rerankCutoff, Math.max(1, searcher.maxDoc()));
+			TopScoreDocCollector collector = TopScoreDocCollector.create(numHits, Math.max(minExactCount, numHits));
+			searcher.search(applyFilter(query, filter), collector);
+			topDocs = collector.topDocs();
+		}
+		long numFound = topDocs.totalHits.value;
+		boolean numFoundExact = (topDocs.totalHits.relation == TotalHits.Relation.EQUAL_TO);
+		String queryA = query.toString();
+		if (windowQuery != null) {
+			// two-phase SDM: window components only for the top documents of the terms query
+			try (StageTimings.Stage stage = timings.start("queryA.windows")) {
+				topDocs = CandidateRescorer.addScores(searcher, windowQuery, topDocs.scoreDocs);
+			}
+			queryA = queryA + " rescore:(" + windowQuery + ")";
+		}
+
+		// step 5: run query B
+		try (StageTimings.Stage stage = timings.start("rerank")) {
+			return rerank(reqParams, rtype, tokens, fieldName, queryA, topDocs, numFound, numFoundExact, filter,
+					searcher, timings, timeAllowed);
+		}
+	}
+
+	/**
+	 * Intersects the parsed fq parameters through the searcher's filterCache.
+	 * Returns null if there are none.
+	 */
+	private static Query getFilter(List<Query> filters, SolrIndexSearcher searcher) throws IOException {
+		if (filters.isEmpty()) {
+			return null;
+		}
+		return searcher.getDocSet(filters).getTopFilter();
+	}
+
+	/**
+	 * Parses the fq parameters with Solr's query parsers against the whole
+	 * request, so local params and $param references resolve as in the search
+	 * handler. Like there, defType does not apply to filters. Blank filters
+	 * are left out. Parsed once per request, for both the result cache key
+	 * and the ranking.
+	 */
+	public static List<Query> parseFilters(SolrParams reqParams, SolrIndexSearcher searcher) {
+		String[] fq = reqParams.getParams("fq");
+		List<Query> filters = new ArrayList<Query>();
+		if (fq == null) {
+			return filters;
+		}
+		SolrQueryRequest req = new LocalSolrQueryRequest(searcher.getCore(), reqParams);
+		try {
+			for (String f : fq) {
+				if (f == null || f.trim().isEmpty()) {
+					continue;
+				}
+				Query filter = QParser.getParser(f, req).getQuery();
+				if (filter != null) {
+					filters.add(filter);
+				}
+			}
+		} catch (SyntaxError e) {
+			throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, e);
+		} finally {
+			req.close();
+		}
+		return filters;
+	}
+
+	private static Query applyFilter(Query query, Query filter) {
+		if (filter == null) {
+			return query;
+		}
+		return new BooleanQuery.Builder()
+				.add(query, BooleanClause.Occur.MUST)
+				.add(filter, BooleanClause.Occur.FILTER)
+				.build();
+	}
+
+	private static Map<String,Float> getSeqDepModelParams(SolrParams reqParams) {
+		Map<String,Float> params = new HashMap<String,Float>();
+		params.put("termWeight",
+				Float.valueOf(reqParams.get("sdm.termWeight", "0.85")));
+		params.put("orderedWindowWeight",
+				Float.valueOf(reqParams.get("sdm.orderedWindowWeight", "0.1")));
+		params.put("unorderedWindowWeight",
+				Float.valueOf(reqParams.get("sdm.unorderedWindowWeight", "0.05")));
+		return params;
+	}
+
+	private Ranking rerank(SolrParams reqParams, String rtype, List<String> tokens, String fieldName,
+			String queryA, TopDocs topDocs, long numFound, boolean numFoundExact, Query filter, SolrIndexSearcher searcher,
+			StageTimings timings, TimeOut timeAllowed) {
+		RerankedResult rerankedResults = null;
+		String seed = reqParams.get("ax.seed");
+		boolean parallel = reqParams.getBool("ax.parallel", false);
+		int parallelMinDocs = reqParams.getInt("rerank.parallelMinDocs", 0);
+		RerankerFactory rf = new RerankerFactory((seed == null) ? null : Long.valueOf(seed),
+				(parallel || parallelMinDocs > 0) ? executor : null, maxTasksPerRequest, timings, timeAllowed);
+		Map<String,Float> params = new HashMap<String,Float>();
+		params.put("parallel", parallel ? 1.0F : 0.0F);
+		// feedback documents are read leaf by leaf on the executor from this many on, 0 for never
+		params.put("parallelMinDocs", (float) parallelMinDocs);
+		// :HACK: to allow testing ANSERINI-422
+		params.put("_restrict", reqParams.getBool("_restrict", false) ? 1.0F: 0.0F);
+		params.put("_rescore", "rescore".equals(reqParams.get("rerank.mode", "search")) ? 1.0F : 0.0F);
+		// feedback terms from the forward index where there is one, or always from term vectors
+		params.put("forwardIndex", "termVectors".equals(reqParams.get("rerank.termSource", "auto")) ? 0.0F : 1.0F);
+		if ("rm3".equals(rtype)) {       // "rm3"
+			params.put("fbTerms", Float.valueOf(reqParams.get("rm3.fbTerms", "10")));
+			params.put("fbDocs", Float.valueOf(reqParams.get("rm3.fbDocs", "10")));
+			params.put("originalQueryWeight",
+					Float.valueOf(reqParams.get("rm3.originalQueryWeight", "0.5")));
+			params.put("compactVectors", reqParams.getBool("rm3.compactVectors", false) ? 1.0F : 0.0F);
+			rerankedResults = rf.rerankWithRM3(topDocs.scoreDocs, params, tokens, fieldName, filter, searcher);
+		} else if ("ax".equals(rtype)) { // "ax"
+			params.put("R", Float.valueOf(reqParams.get("ax.R", "20")));
+			params.put("N", Float.valueOf(reqParams.get("ax.N", "20")));
+			params.put("K", Float.valueOf(reqParams.get("ax.K", "1000")));
+			params.put("M", Float.valueOf(reqParams.get("ax.M", "30")));
+			params.put("beta", Float.valueOf(reqParams.get("ax.beta", "0.4")));
+			rerankedResults = rf.rerankWithAxiom(topDocs.scoreDocs, params, tokens, fieldName, filter, searcher);
+		} else {                         // "id"
+			rerankedResults = rf.rerankWithIdentity(topDocs.scoreDocs);
+		}
+
+		String queryB = "id".equals(rtype) ? "N/A" : rerankedResults.getQuery().toString();
+		return new Ranking(queryA, queryB, rerankedResults.getDocuments(), numFound, numFoundExact,
+				rerankedResults.getErrorMessage(), rerankedResults.isPartial());
+	}
+}
@@ -8,12 +8,21 @@ public class RerankedResult {
 	private BooleanQuery query;
 	private ScoreDoc[] documents;
 	private String errorMessage;
+	private boolean partial;
 
-	
-	public RerankedResult(BooleanQuery query, ScoreDoc[] documents, String errorMessage) {
+	/**
+	 * @param partial true if the time budget ran out before reranking was
+	 *        done, and the documents are those of the input ranking
+	 */
+	public RerankedResult(BooleanQuery query, ScoreDoc[] documents, String errorMessage, boolean partial) {
 		this.query = query;
 		this.documents = documents;
 		this.errorMessage = errorMessage;
+		this.partial = partial;
+	}
+
+	public RerankedResult(BooleanQuery query, ScoreDoc[] documents, String errorMessage) {
+		this(query, documents, errorMessage, false);
 	}
 
 	public RerankedResult(BooleanQuery query, ScoreDoc[] documents) {
@@ -31,4 +40,8 @@ public class RerankedResult {
 	public String getErrorMessage() {
 		return errorMessage;
 	}
+
+	public boolean isPartial() {
+		return partial;
+	}
 }
@@ -2,46 +2,161 @@ package com.elsevier.asp;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
-import org.apache.commons.lang3.tuple.Pair;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
 import org.apache.lucene.index.Term;
-import org.apache.lucene.index.Terms;
-import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.BoostQuery;
-import org.apache.lucene.search.DocValuesFieldExistsQuery;
+import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefArray;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.Counter;
+import org.apache.lucene.util.FixedBitSet;
 import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.search.SortedIntDocSet;
+import org.apache.solr.util.TimeOut;
 
 public class RerankerFactory {
 
+	// smallest slice of the Axiom pool vocabulary worth handing to another thread
+	private static final int MIN_POOL_TERMS_PER_TASK = 2048;
+
+	private final Random random;
+	// seed of random, or null if unknown, tells expansions of differently seeded requests apart
+	private final Long seed;
+	private final ExecutorService executor;
+	private final int maxTasks;
+	private final AnseriniMetrics metrics;
+	private final StageTimings timings;
+	// time budget for reranking, or null for none
+	private final TimeOut timeAllowed;
+
+	public RerankerFactory() {
+		this(new Random());
+	}
+
+	public RerankerFactory(Random random) {
+		this(random, null, null, 1, new StageTimings(new AnseriniMetrics()), null);
+	}
+
+	/**
+	 * @param seed seed for the Axiom background documents, or null for an unseeded sample
+	 * @param executor shared executor for parallel term scoring, or null to score on the calling thread
+	 * @param maxTasks most tasks one request may have running on the executor at the same time
+	 * @param timings where to record stage timings, and through its metrics cache statistics
+	 */
+	public RerankerFactory(Long seed, ExecutorService executor, int maxTasks, StageTimings timings) {
+		this(seed, executor, maxTasks, timings, null);
+	}
+
+	/**
+	 * @param timeAllowed time budget, checked between the steps of an expansion
+	 *        and before query B is run; once it is spent, rerankers return
+	 *        their input ranking marked as partial. Null for no budget.
+	 */
+	public RerankerFactory(Long seed, ExecutorService executor, int maxTasks, StageTimings timings,
+	    TimeOut timeAllowed) {
+		this((seed == null) ? new Random() : new Random(seed), seed, executor, maxTasks, timings, timeAllowed);
+	}
+
+	private RerankerFactory(Random random, Long seed, ExecutorService executor, int maxTasks,
+	    StageTimings timings, TimeOut timeAllowed) {
+		this.random = random;
+		this.seed = seed;
+		this.executor = executor;
+		this.maxTasks = maxTasks;
+		this.metrics = timings.getMetrics();
+		this.timings = timings;
+		this.timeAllowed = timeAllowed;
+	}
+
 	public RerankedResult rerankWithRM3(ScoreDoc[] inputs, Map<String, Float> params, String queryString,
 	    String fieldName, Analyzer analyzer, SolrIndexSearcher searcher) {
+		return rerankWithRM3(inputs, params, AnalyzerUtils.tokenizeQuery(queryString, fieldName, analyzer),
+		    fieldName, null, searcher);
+	}
+
+	/**
+	 * @param terms the analyzed query, as returned by AnalyzerUtils.tokenizeQuery
+	 * @param filter filter query B is searched with, or null
+	 */
+	public RerankedResult rerankWithRM3(ScoreDoc[] inputs, Map<String, Float> params, List<String> terms,
+	    String fieldName, Query filter, SolrIndexSearcher searcher) {
 
 		int fbDocs = params.get("fbDocs").intValue();
 		int fbTerms = params.get("fbTerms").intValue();
 		float originalQueryWeight = params.get("originalQueryWeight");
+		boolean compactVectors = (params.getOrDefault("compactVectors", 0.0F).intValue() == 1);
+		boolean useForwardIndex = (params.getOrDefault("forwardIndex", 1.0F).intValue() == 1);
+		int parallelMinDocs = params.getOrDefault("parallelMinDocs", 0.0F).intValue();
+
+		TermVectorSource termVectors = TermVectorSource.forField(searcher, fieldName, useForwardIndex);
+
+		// reuse the expansion of an earlier request with the same query terms and feedback documents
+		ExpansionCache expansionCache = SearcherResources.forSearcher(searcher).getExpansionCache();
+		ExpansionCache.Key key = ExpansionCache.Key.of("rm3", fieldName, terms, inputs, fbDocs, true,
+		    fbTerms, originalQueryWeight, compactVectors, termVectors.usesForwardIndex());
+		BooleanQuery queryB = expansionCache.get(key, metrics);
+		if (queryB == null) {
+			long startTime = System.currentTimeMillis();
+			try (StageTimings.Stage stage = timings.start("rm3.expansion")) {
+				queryB = buildRM3Query(terms, inputs, fbDocs, fbTerms, originalQueryWeight, compactVectors,
+				    termVectors, parallelMinDocs, fieldName, searcher);
+			} catch (TimeAllowedExceededException e) {
+				return new RerankedResult(new BooleanQuery.Builder().build(), inputs, null, true);
+			} catch (IOException e) {
+				// the feedback documents could not be read: answer with the ranking of
+				// query A and an error, so that neither cache keeps a degraded expansion
+				e.printStackTrace();
+				return new RerankedResult(new BooleanQuery.Builder().build(), inputs, e.getMessage());
+			}
+			expansionCache.put(key, queryB, System.currentTimeMillis() - startTime);
+		}
+		if (hasTimedOut()) {
+			return new RerankedResult(queryB, inputs, null, true);
+		}
+
+		// retrieve reranked results from Query B
+		try {
+			TopDocs topDocs = runQueryB(queryB, inputs, params, filter, searcher);
+			return new RerankedResult(queryB, topDocs.scoreDocs);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return new RerankedResult(queryB, inputs, e.getMessage());
+		}
+	}
+
+	private BooleanQuery buildRM3Query(List<String> terms, ScoreDoc[] inputs, int fbDocs, int fbTerms,
+	    float originalQueryWeight, boolean compactVectors, TermVectorSource termVectors, int parallelMinDocs,
+	    String fieldName, SolrIndexSearcher searcher) throws IOException {
 
 		// construct feature vectors for query and results from Query A
-		List<String> terms = AnalyzerUtils.tokenizeQuery(queryString, fieldName, analyzer);
-		FeatureVector queryVector = FeatureVector.fromTerms(terms).scaleToUnitL1Norm();
-		DirectoryReader reader = searcher.getIndexReader();
-		FeatureVector documentVector = aggregateDocumentVectors(inputs, reader, fbDocs, fbTerms, fieldName);
+		TermOrdinals termOrdinals = compactVectors ? new TermOrdinals() : null;
+		FeatureVector queryVector = compactVectors ? CompactFeatureVector.fromTerms(terms, termOrdinals)
+		    : FeatureVector.fromTerms(terms);
+		queryVector.scaleToUnitL1Norm();
+		FeatureVector documentVector = aggregateDocumentVectors(inputs, searcher, fbDocs, fbTerms, fieldName,
+		    termOrdinals, termVectors, parallelMinDocs);
 
 		// interpolate query and document vectors
 		FeatureVector interpolatedVector = FeatureVector.interpolate(queryVector, documentVector, originalQueryWeight);
@@ -54,331 +169,617 @@ public class RerankerFactory {
 			float prob = interpolatedVector.getFeatureWeight(term);
 			queryBuilder.add(new BoostQuery(new TermQuery(new Term(fieldName, term)), prob), BooleanClause.Occur.SHOULD);
 		}
-
-		// restrict query B to results returned by query A
-		BooleanQuery.Builder rerankQueryBuilder = new BooleanQuery.Builder();
-		rerankQueryBuilder.add(queryBuilder.build(), BooleanClause.Occur.MUST);
-		BooleanQuery originalResultsFilter = buildResultFilter(inputs, reader);
-		rerankQueryBuilder.add(originalResultsFilter, BooleanClause.Occur.FILTER);
-
-		boolean doRestrict = (params.get("_restrict").intValue() == 1);
-
-		// retrieve reranked results from Query B
-		try {
-			TopDocs topDocs = null;
-			if (doRestrict) {
-				topDocs = searcher.search(rerankQueryBuilder.build(), inputs.length);	
-			} else {
-				topDocs = searcher.search(queryBuilder.build(), inputs.length);
-			}
-			return new RerankedResult(queryBuilder.build(), topDocs.scoreDocs);
-		} catch (IOException e) {
-			e.printStackTrace();
-			return new RerankedResult(queryBuilder.build(), inputs, e.getMessage());
-		}
+		return queryBuilder.build();
 	}
 
 	public RerankedResult rerankWithAxiom(ScoreDoc[] inputs, Map<String, Float> params, String queryString,
 	    String fieldName, Analyzer analyzer, SolrIndexSearcher searcher) {
+		return rerankWithAxiom(inputs, params, AnalyzerUtils.tokenizeQuery(queryString, fieldName, analyzer),
+		    fieldName, null, searcher);
+	}
+
+	/**
+	 * @param terms the analyzed query, as returned by AnalyzerUtils.tokenizeQuery
+	 * @param filter filter query B is searched with, or null
+	 */
+	public RerankedResult rerankWithAxiom(ScoreDoc[] inputs, Map<String, Float> params, List<String> terms,
+	    String fieldName, Query filter, SolrIndexSearcher searcher) {
 
 		int R = params.get("R").intValue(); // number of top docs from inputs
 		int N = params.get("N").intValue(); // + (N-1)*R random documents from index
 		int K = params.get("K").intValue(); // top similar terms to consider
 		int M = params.get("M").intValue(); // number of expansion terms
 		float beta = params.get("beta"); // scaling factor
+		boolean useForwardIndex = (params.getOrDefault("forwardIndex", 1.0F).intValue() == 1);
+		// term scoring is parallel whenever there is an executor, unless told otherwise
+		boolean parallelScoring = (params.getOrDefault("parallel", 1.0F).intValue() == 1);
+		int parallelMinDocs = params.getOrDefault("parallelMinDocs", 0.0F).intValue();
 
-		BooleanQuery.Builder queryBuilder = new BooleanQuery.Builder();
+		BooleanQuery queryB = new BooleanQuery.Builder().build();
 		try {
 
-			// get the docIds to use (R top docs + (N-1)*R random docs)
-			DirectoryReader reader = searcher.getIndexReader();
-
-			// extract inverted list from reranking pool
-			Set<Integer> usedDocs = collectDocIds(inputs, R, N, searcher, reader);
-			Map<String, Set<Integer>> termInvertedList = extractTerms(usedDocs, fieldName, searcher, reader);
-
-			// calculate all terms in reranking pool and pick top K
-			Map<String, Double> termScores = computeTermScores(termInvertedList, queryString, fieldName, analyzer, M, K, beta,
-			    searcher, reader);
+			TermVectorSource termVectors = TermVectorSource.forField(searcher, fieldName, useForwardIndex);
+
+			// reuse the expansion of an earlier request with the same query terms and top R documents
+			ExpansionCache expansionCache = SearcherResources.forSearcher(searcher).getExpansionCache();
+			ExpansionCache.Key key = ExpansionCache.Key.of("ax", fieldName, terms, inputs, R, false,
+			    R, N, K, M, beta, seed, termVectors.usesForwardIndex());
+			BooleanQuery cachedQuery = expansionCache.get(key, metrics);
+			if (cachedQuery == null) {
+				long startTime = System.currentTimeMillis();
+				try (StageTimings.Stage stage = timings.start("ax.expansion")) {
+					queryB = buildAxiomQuery(inputs, R, N, K, M, beta, terms, fieldName, termVectors,
+					    parallelScoring, parallelMinDocs, searcher);
+				}
+				expansionCache.put(key, queryB, System.currentTimeMillis() - startTime);
+			} else {
+				queryB = cachedQuery;
+			}
 
-			// build query B
-			if (termScores.isEmpty()) {
-				return new RerankedResult(queryBuilder.build(), inputs);
+			if (queryB.clauses().isEmpty()) {
+				return new RerankedResult(queryB, inputs);
 			}
-			for (Map.Entry<String, Double> termScore : termScores.entrySet()) {
-				String term = termScore.getKey();
-				float prob = termScore.getValue().floatValue();
-				queryBuilder.add(new BoostQuery(new TermQuery(new Term(fieldName, term)), prob), BooleanClause.Occur.SHOULD);
+			if (hasTimedOut()) {
+				return new RerankedResult(queryB, inputs, null, true);
 			}
+			TopDocs topDocs = runQueryB(queryB, inputs, params, filter, searcher);
+			return new RerankedResult(queryB, topDocs.scoreDocs);
 
-			// restrict query B to results returned by query A
-			BooleanQuery.Builder rerankQueryBuilder = new BooleanQuery.Builder();
-			rerankQueryBuilder.add(queryBuilder.build(), BooleanClause.Occur.MUST);
-			BooleanQuery originalResultsFilter = buildResultFilter(inputs, reader);
-			rerankQueryBuilder.add(originalResultsFilter, BooleanClause.Occur.FILTER);
-
-			TopDocs topDocs = searcher.search(queryBuilder.build(), inputs.length);
-			return new RerankedResult(queryBuilder.build(), topDocs.scoreDocs);
-
+		} catch (TimeAllowedExceededException e) {
+			return new RerankedResult(queryB, inputs, null, true);
 		} catch (Exception e) {
 			e.printStackTrace();
-			return new RerankedResult(queryBuilder.build(), inputs, e.getMessage());
+			return new RerankedResult(queryB, inputs, e.getMessage());
 		}
 	}
 
+	private BooleanQuery buildAxiomQuery(ScoreDoc[] inputs, int R, int N, int K, int M, float beta,
+	    List<String> queryTerms, String fieldName, TermVectorSource termVectors, boolean parallelScoring,
+	    int parallelMinDocs, SolrIndexSearcher searcher) throws Exception {
+
+		// get the docIds to use (R top docs + (N-1)*R random docs)
+		DirectoryReader reader = searcher.getIndexReader();
+
+		// extract inverted list from reranking pool
+		AxiomTermPool termPool;
+		try (StageTimings.Stage stage = timings.start("ax.pool")) {
+			Set<Integer> usedDocs = collectDocIds(inputs, R, N, searcher);
+			termPool = extractTerms(usedDocs, termVectors, parallelMinDocs);
+		}
+		checkTimeAllowed();
+
+		// calculate all terms in reranking pool and pick top K
+		Map<String, Double> termScores;
+		try (StageTimings.Stage stage = timings.start("ax.termScores")) {
+			termScores = computeTermScores(termPool, queryTerms, fieldName, M, K, beta, parallelScoring, searcher,
+			    reader);
+		}
+
+		// build query B, empty if there are no expansion terms
+		BooleanQuery.Builder queryBuilder = new BooleanQuery.Builder();
+		for (Map.Entry<String, Double> termScore : termScores.entrySet()) {
+			String term = termScore.getKey();
+			float prob = termScore.getValue().floatValue();
+			queryBuilder.add(new BoostQuery(new TermQuery(new Term(fieldName, term)), prob), BooleanClause.Occur.SHOULD);
+		}
+		return queryBuilder.build();
+	}
+
 	public RerankedResult rerankWithIdentity(ScoreDoc[] inputs) {
 		// returns inputs without reranking -- for debugging use mostly
 		return new RerankedResult(null, inputs);
 	}
 
-	private FeatureVector aggregateDocumentVectors(ScoreDoc[] docs, DirectoryReader reader, int fbDocs, int fbTerms,
-	    String fieldName) {
-		FeatureVector f = new FeatureVector();
+	private FeatureVector aggregateDocumentVectors(ScoreDoc[] docs, SolrIndexSearcher searcher, int fbDocs, int fbTerms,
+	    String fieldName, TermOrdinals termOrdinals, TermVectorSource termVectors, int parallelMinDocs)
+	    throws IOException {
+		FeatureVector f = newFeatureVector(termOrdinals);
 		int numDocs = (docs.length < fbDocs) ? docs.length : fbDocs;
-		Set<String> vocab = new HashSet<String>();
 		FeatureVector[] docVectors = new FeatureVector[numDocs];
-		for (int i = 0; i < numDocs; i++) {
-			try {
-				Terms terms = reader.getTermVector(docs[i].doc, fieldName);
-				FeatureVector docVector = createDocumentVector(terms, fieldName, reader);
-				docVector.pruneToSize(fbTerms);
-				vocab.addAll(docVector.getFeatures());
-				docVectors[i] = docVector;
-			} catch (IOException e) {
-				e.printStackTrace();
-				// return empty feature vector
-				return f;
+		TermStatistics termStatistics = SearcherResources.forSearcher(searcher).getTermStatistics(fieldName);
+		try (StageTimings.Stage stage = timings.start("rm3.termVectors")) {
+			if (isParallel(numDocs, parallelMinDocs)) {
+				readTermFrequenciesByLeaf(docs, docVectors, termVectors, termOrdinals);
+			} else {
+				for (int i = 0; i < numDocs; i++) {
+					checkTimeAllowed();
+					docVectors[i] = readTermFrequencies(termVectors, docs[i].doc, termOrdinals);
+				}
 			}
 		}
+		for (int i = 0; i < numDocs; i++) {
+			FeatureVector docVector = createDocumentVector(docVectors[i], termStatistics, termOrdinals);
+			docVector.pruneToSize(fbTerms);
+			docVectors[i] = docVector;
+		}
 		// precompute norms once and cache results
 		float[] norms = new float[docVectors.length];
 		for (int i = 0; i < docVectors.length; i++) {
 			norms[i] = (float) docVectors[i].computeL1Norm();
 		}
-		for (String term : vocab) {
-			float fbWeight = 0.0f;
-			for (int i = 0; i < docVectors.length; i++) {
-				if (norms[i] > 0.001f) {
-					fbWeight += (docVectors[i].getFeatureWeight(term) / norms[i]) * docs[i].score;
+		// accumulate feedback weights document by document, which adds up the weights
+		// of each term in the same order as looping over the vocabulary would, without
+		// probing every document vector for every term
+		for (int i = 0; i < docVectors.length; i++) {
+			float scale = (norms[i] > 0.001f) ? docs[i].score : 0.0f;
+			if (docVectors[i] instanceof CompactFeatureVector) {
+				CompactFeatureVector docVector = (CompactFeatureVector) docVectors[i];
+				for (int j = 0; j < docVector.size(); j++) {
+					((CompactFeatureVector) f).addFeatureWeight(docVector.ordinalAt(j),
+					    (docVector.weightAt(j) / norms[i]) * scale);
+				}
+			} else {
+				Iterator<String> it = docVectors[i].iterator();
+				while (it.hasNext()) {
+					String term = it.next();
+					f.addFeatureWeight(term, (docVectors[i].getFeatureWeight(term) / norms[i]) * scale);
 				}
 			}
-			f.addFeatureWeight(term, fbWeight);
 		}
 		f.pruneToSize(fbTerms);
 		f.scaleToUnitL1Norm();
 		return f;
 	}
 
-	private FeatureVector createDocumentVector(Terms terms, String fieldName, DirectoryReader reader) {
-		FeatureVector f = new FeatureVector();
-		try {
-			int numDocs = reader.numDocs();
-			TermsEnum termsEnum = terms.iterator();
-			BytesRef text;
-			while ((text = termsEnum.next()) != null) {
-				String term = text.utf8ToString();
-				// remove very short and very long terms, and those with non-ascii chars
-				if (term.length() < 2 || term.length() > 20)
-					continue;
-				if (!term.matches("[a-z0-9]+"))
-					continue;
-				// remove terms that are very common (df > 0.1)
-				int df = reader.docFreq(new Term(fieldName, term));
-				float ratio = (float) df / numDocs;
-				if (ratio > 0.1f)
-					continue;
-				// add frequency
-				int freq = (int) termsEnum.totalTermFreq();
-				f.addFeatureWeight(term, (float) freq);
+	/**
+	 * Reads the feedback documents on the executor, grouped by index segment
+	 * and in docid order within a group. The shared term ordinals are not
+	 * thread safe, so the workers only collect each document's terms, which
+	 * are then turned into vectors in rank order, numbering terms as when the
+	 * documents are read one by one.
+	 */
+	private void readTermFrequenciesByLeaf(ScoreDoc[] docs, FeatureVector[] docVectors, TermVectorSource termVectors,
+	    TermOrdinals termOrdinals) throws IOException {
+		// feedback document ranks ordered by docid
+		long[] docRanks = new long[docVectors.length];
+		for (int i = 0; i < docRanks.length; i++) {
+			docRanks[i] = ((long) docs[i].doc << 32) | i;
+		}
+		Arrays.sort(docRanks);
+		int[] sortedDocIds = new int[docRanks.length];
+		for (int i = 0; i < docRanks.length; i++) {
+			sortedDocIds[i] = (int) (docRanks[i] >>> 32);
+		}
+		DocumentTerms[] docTerms = new DocumentTerms[docVectors.length];
+		int[] bounds = splitByLeaf(sortedDocIds, termVectors.leaves());
+		runTasks(bounds.length - 1, group -> {
+			TermVectorSource groupTermVectors = termVectors.copy();
+			for (int j = bounds[group]; j < bounds[group + 1]; j++) {
+				checkTimeAllowed();
+				DocumentTerms terms = new DocumentTerms();
+				visitFeedbackTerms(groupTermVectors, sortedDocIds[j], terms);
+				docTerms[(int) docRanks[j]] = terms;
 			}
-		} catch (IOException e) {
-			e.printStackTrace();
+		});
+		for (int i = 0; i < docVectors.length; i++) {
+			FeatureVector f = newFeatureVector(termOrdinals);
+			BytesRefBuilder scratch = new BytesRefBuilder();
+			for (int j = 0; j < docTerms[i].size(); j++) {
+				addTermFrequency(f, docTerms[i].term(j, scratch), docTerms[i].freq(j), termOrdinals);
+			}
+			docVectors[i] = f;
 		}
+	}
+
+	private FeatureVector readTermFrequencies(TermVectorSource termVectors, int docId, TermOrdinals termOrdinals)
+	    throws IOException {
+		FeatureVector f = newFeatureVector(termOrdinals);
+		visitFeedbackTerms(termVectors, docId, (text, freq) -> addTermFrequency(f, text, freq, termOrdinals));
 		return f;
 	}
 
-	private BooleanQuery buildResultFilter(ScoreDoc[] inputs, DirectoryReader reader) {
-		// use original query as filter since we want to rerank from what we got
-		BooleanQuery.Builder filterBuilder = new BooleanQuery.Builder();
-		for (ScoreDoc input : inputs) {
-			try {
-				String id = reader.document(input.doc).get("id");
-				filterBuilder.add(new TermQuery(new Term("id", id)), BooleanClause.Occur.SHOULD);
-			} catch (IOException e) {
-				e.printStackTrace();
+	private static void visitFeedbackTerms(TermVectorSource termVectors, int docId, ForwardIndex.TermVisitor visitor)
+	    throws IOException {
+		termVectors.visit(docId, (text, freq) -> {
+			// remove very short and very long terms, and those with non-ascii chars
+			if (text.length < 2 || text.length > 20)
+				return;
+			if (!isLowerCaseAlphaNumeric(text))
+				return;
+			visitor.visit(text, freq);
+		});
+	}
+
+	private static void addTermFrequency(FeatureVector f, BytesRef text, int freq, TermOrdinals termOrdinals) {
+		if (f instanceof CompactFeatureVector) {
+			((CompactFeatureVector) f).addFeatureWeight(termOrdinals.ordinal(text), (float) freq);
+		} else {
+			f.addFeatureWeight(text.utf8ToString(), (float) freq);
+		}
+	}
+
+	// terms and frequencies of one feedback document, as read by a worker thread
+	private static class DocumentTerms implements ForwardIndex.TermVisitor {
+		private final BytesRefArray terms = new BytesRefArray(Counter.newCounter());
+		private int[] freqs = new int[16];
+
+		@Override
+		public void visit(BytesRef term, int freq) {
+			freqs = ArrayUtil.grow(freqs, terms.size() + 1);
+			freqs[terms.append(term)] = freq;
+		}
+
+		int size() {
+			return terms.size();
+		}
+
+		BytesRef term(int index, BytesRefBuilder scratch) {
+			return terms.get(scratch, index);
+		}
+
+		int freq(int index) {
+			return freqs[index];
+		}
+	}
+
+	private static FeatureVector newFeatureVector(TermOrdinals termOrdinals) {
+		return (termOrdinals == null) ? new FeatureVector() : new CompactFeatureVector(termOrdinals);
+	}
+
+	private static boolean isLowerCaseAlphaNumeric(BytesRef text) {
+		// only single byte UTF-8 characters can match, so checking bytes is enough
+		for (int i = text.offset; i < text.offset + text.length; i++) {
+			byte b = text.bytes[i];
+			if ((b < 'a' || b > 'z') && (b < '0' || b > '9')) {
+				return false;
 			}
 		}
-		return filterBuilder.build();
+		return true;
 	}
 
-	private Set<Integer> collectDocIds(ScoreDoc[] inputs, int R, int N, SolrIndexSearcher searcher,
-	    DirectoryReader reader) throws IOException {
+	private FeatureVector createDocumentVector(FeatureVector termFrequencies, TermStatistics termStatistics,
+	    TermOrdinals termOrdinals) {
+		FeatureVector f = newFeatureVector(termOrdinals);
+		if (termFrequencies instanceof CompactFeatureVector) {
+			// remove terms that are very common (df > 0.1), by their bytes
+			CompactFeatureVector frequencies = (CompactFeatureVector) termFrequencies;
+			for (int i = 0; i < frequencies.size(); i++) {
+				int ord = frequencies.ordinalAt(i);
+				if (termStatistics.isCommon(termOrdinals.bytes(ord)))
+					continue;
+				((CompactFeatureVector) f).addFeatureWeight(ord, frequencies.weightAt(i));
+			}
+			return f;
+		}
+		Iterator<String> it = termFrequencies.iterator();
+		while (it.hasNext()) {
+			String term = it.next();
+			// remove terms that are very common (df > 0.1)
+			if (termStatistics.isCommon(term))
+				continue;
+			f.addFeatureWeight(term, termFrequencies.getFeatureWeight(term));
+		}
+		return f;
+	}
+
+	/**
+	 * Runs query B in the mode the request asked for: by default a search over
+	 * the whole index as Anserini does, optionally filtered to the results of
+	 * query A (_restrict), or by rescoring only those results (_rescore), which
+	 * ranks the same documents as the filtered search without walking the full
+	 * postings lists.
+	 */
+	private TopDocs runQueryB(Query queryB, ScoreDoc[] inputs, Map<String, Float> params, Query filter,
+	    SolrIndexSearcher searcher) throws IOException {
+		try (StageTimings.Stage stage = timings.start("queryB.search")) {
+			return searchQueryB(queryB, inputs, params, filter, searcher);
+		}
+	}
+
+	private TopDocs searchQueryB(Query queryB, ScoreDoc[] inputs, Map<String, Float> params, Query filter,
+	    SolrIndexSearcher searcher) throws IOException {
+		if (params.getOrDefault("_rescore", 0.0F).intValue() == 1) {
+			return CandidateRescorer.rescore(searcher, queryB, inputs);
+		}
+		if (params.get("_restrict").intValue() == 1) {
+			// restrict query B to results returned by query A
+			BooleanQuery.Builder rerankQueryBuilder = new BooleanQuery.Builder();
+			rerankQueryBuilder.add(queryB, BooleanClause.Occur.MUST);
+			rerankQueryBuilder.add(buildResultFilter(inputs), BooleanClause.Occur.FILTER);
+			return searchTop(rerankQueryBuilder.build(), inputs.length, searcher);
+		}
+		if (filter != null) {
+			// query A's results already pass the filters, the whole index does not
+			BooleanQuery.Builder filteredQueryBuilder = new BooleanQuery.Builder();
+			filteredQueryBuilder.add(queryB, BooleanClause.Occur.MUST);
+			filteredQueryBuilder.add(filter, BooleanClause.Occur.FILTER);
+			return searchTop(filteredQueryBuilder.build(), inputs.length, searcher);
+		}
+		return searchTop(queryB, inputs.length, searcher);
+	}
+
+	/**
+	 * Top numHits documents of the query. Their total is of no use to query B,
+	 * so hits are only counted as far as the top documents, which leaves
+	 * Lucene free to skip blocks of documents that can not make them.
+	 */
+	private static TopDocs searchTop(Query query, int numHits, SolrIndexSearcher searcher) throws IOException {
+		if (numHits == 0) {
+			return new TopDocs(new TotalHits(0, TotalHits.Relation.EQUAL_TO), new ScoreDoc[0]);
+		}
+		TopScoreDocCollector collector = TopScoreDocCollector.create(numHits, numHits);
+		searcher.search(query, collector);
+		return collector.topDocs();
+	}
+
+	/**
+	 * Filter matching exactly the documents of the original ranking, by their
+	 * docids in the current searcher. Unlike a disjunction over the id field it
+	 * needs no stored field reads and is not bound by the max clause count.
+	 */
+	private Query buildResultFilter(ScoreDoc[] inputs) {
+		int[] docs = new int[inputs.length];
+		for (int i = 0; i < inputs.length; i++) {
+			docs[i] = inputs[i].doc;
+		}
+		Arrays.sort(docs);
+		return new SortedIntDocSet(docs).getTopFilter();
+	}
+
+	private Set<Integer> collectDocIds(ScoreDoc[] inputs, int R, int N, SolrIndexSearcher searcher)
+	    throws IOException {
 		// select R*M documents from original ranking list
 		Set<Integer> docIdSet = new HashSet<Integer>();
 		for (int i = 0; i < Math.min(R, inputs.length); i++) {
 			docIdSet.add(inputs[i].doc);
 		}
-		// + (N-1)*R random documents from index
-		ScoreDoc[] allDocs = searcher.search(new DocValuesFieldExistsQuery("id"), reader.maxDoc()).scoreDocs;
-		int targetSize = R * N;
-		Random random = new Random();
+		// + (N-1)*R random documents from index, drawn from the cached per-searcher sample
+		BackgroundSample sample = SearcherResources.forSearcher(searcher).getBackgroundSample();
+		int targetSize = Math.min(R * N, Math.max(docIdSet.size(), sample.size()));
 		while (docIdSet.size() < targetSize) {
-			docIdSet.add(allDocs[random.nextInt(allDocs.length)].doc);
+			docIdSet.add(sample.sample(random));
 		}
 		return docIdSet;
 	}
 
-	private Map<String, Set<Integer>> extractTerms(Set<Integer> docIds, String fieldName, SolrIndexSearcher searcher,
-	    DirectoryReader reader) throws Exception {
-		Map<String, Set<Integer>> termDocidSets = new HashMap<String, Set<Integer>>();
+	private AxiomTermPool extractTerms(Set<Integer> docIds, TermVectorSource termVectors, int parallelMinDocs)
+	    throws Exception {
+		// pool documents are numbered 0..docIds.size()-1 in increasing docid
+		// order, in which their forward index is read sequentially
+		int[] sortedDocIds = new int[docIds.size()];
+		int n = 0;
 		for (int docId : docIds) {
-			Terms terms = reader.getTermVector(docId, fieldName);
-			if (terms == null) {
-				continue;
-			}
-			TermsEnum te = terms.iterator();
-			if (te == null) {
-				continue;
+			sortedDocIds[n++] = docId;
+		}
+		Arrays.sort(sortedDocIds);
+		AxiomTermPool.Builder poolBuilder = new AxiomTermPool.Builder(sortedDocIds.length);
+		if (isParallel(sortedDocIds.length, parallelMinDocs)) {
+			// each group of documents goes to a builder of its own, merged in docid
+			// order; the pool numbers its terms in term order and sorts its
+			// occurrences, so it is the same as a serial one
+			int[] bounds = splitByLeaf(sortedDocIds, termVectors.leaves());
+			AxiomTermPool.Builder[] groupBuilders = new AxiomTermPool.Builder[bounds.length - 1];
+			runTasks(groupBuilders.length, group -> {
+				AxiomTermPool.Builder groupBuilder = new AxiomTermPool.Builder(sortedDocIds.length);
+				addPoolTerms(groupBuilder, sortedDocIds, bounds[group], bounds[group + 1], termVectors.copy());
+				groupBuilders[group] = groupBuilder;
+			});
+			for (AxiomTermPool.Builder groupBuilder : groupBuilders) {
+				poolBuilder.addAll(groupBuilder);
 			}
-			while ((te.next()) != null) {
-				String term = te.term().utf8ToString();
+		} else {
+			addPoolTerms(poolBuilder, sortedDocIds, 0, sortedDocIds.length, termVectors);
+		}
+		return poolBuilder.build();
+	}
+
+	private void addPoolTerms(AxiomTermPool.Builder poolBuilder, int[] sortedDocIds, int from, int to,
+	    TermVectorSource termVectors) throws IOException {
+		for (int docOrd = from; docOrd < to; docOrd++) {
+			checkTimeAllowed();
+			int ord = docOrd;
+			termVectors.visit(sortedDocIds[docOrd], (text, freq) -> {
 				// We do some noisy filtering here ... pure empirical heuristic
-				if (term.length() < 2)
-					continue;
-				if (!term.matches("[a-z]+"))
-					continue;
-				if (!termDocidSets.containsKey(term)) {
-					termDocidSets.put(term, new HashSet<Integer>());
-				}
-				termDocidSets.get(term).add(docId);
+				if (text.length < 2)
+					return;
+				if (!isLowerCaseAlpha(text))
+					return;
+				poolBuilder.add(ord, text);
+			});
+		}
+	}
+
+	// whether feedback documents are read segment by segment on the executor
+	private boolean isParallel(int numDocs, int parallelMinDocs) {
+		return executor != null && parallelMinDocs > 0 && numDocs >= parallelMinDocs;
+	}
+
+	/**
+	 * Splits docids into groups of documents of the same index segment, the
+	 * documents of the i-th group being sortedDocIds[bounds[i]] to
+	 * sortedDocIds[bounds[i + 1] - 1]. Segments with more than their share of
+	 * maxTasks are split further, so that a force merged index still gets
+	 * read on several threads.
+	 */
+	private int[] splitByLeaf(int[] sortedDocIds, List<LeafReaderContext> leaves) {
+		int maxGroupSize = Math.max(1, (sortedDocIds.length + maxTasks - 1) / maxTasks);
+		int[] bounds = new int[leaves.size() + maxTasks + 1];
+		int numBounds = 1;
+		int leafEnd = -1;
+		for (int i = 0; i < sortedDocIds.length; i++) {
+			boolean newLeaf = sortedDocIds[i] >= leafEnd;
+			if (newLeaf) {
+				LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(sortedDocIds[i], leaves));
+				leafEnd = leaf.docBase + leaf.reader().maxDoc();
+			}
+			if (i > 0 && (newLeaf || i - bounds[numBounds - 1] == maxGroupSize)) {
+				bounds = ArrayUtil.grow(bounds, numBounds + 2);
+				bounds[numBounds++] = i;
 			}
 		}
-		return termDocidSets;
+		bounds[numBounds++] = sortedDocIds.length;
+		return Arrays.copyOf(bounds, numBounds);
 	}
 
-	private Map<String, Double> computeTermScores(Map<String, Set<Integer>> termInvertedList, String queryString,
-	    String fieldName, Analyzer analyzer, int M, int K, float beta, SolrIndexSearcher searcher, DirectoryReader reader)
-	    throws IOException {
+	// runs tasks on the executor, rethrowing what a task threw
+	private void runTasks(int numTasks, ParallelRunner.ItemTask task) throws IOException {
+		try {
+			ParallelRunner.run(executor, numTasks, maxTasks, task);
+		} catch (IOException | RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
 
-		class ScoreComparator implements Comparator<Pair<String, Double>> {
-			public int compare(Pair<String, Double> a, Pair<String, Double> b) {
-				int cmp = Double.compare(b.getRight(), a.getRight());
-				if (cmp == 0) {
-					return a.getLeft().compareToIgnoreCase(b.getLeft());
-				} else {
-					return cmp;
-				}
+	private static boolean isLowerCaseAlpha(BytesRef text) {
+		// as for isLowerCaseAlphaNumeric, checking bytes is enough
+		for (int i = text.offset; i < text.offset + text.length; i++) {
+			byte b = text.bytes[i];
+			if (b < 'a' || b > 'z') {
+				return false;
 			}
 		}
+		return text.length > 0;
+	}
+
+	private Map<String, Double> computeTermScores(AxiomTermPool termPool, List<String> queryTerms,
+	    String fieldName, int M, int K, float beta, boolean parallelScoring, SolrIndexSearcher searcher,
+	    DirectoryReader reader)
+	    throws Exception {
 
 		// get collection statistics so that we can get idf later on.
 		final long docCount = reader.numDocs() == -1 ? reader.maxDoc() : reader.numDocs();
 
 		// calculate the Mutual Information between term with each query term
-		List<String> queryTerms = AnalyzerUtils.tokenizeQuery(queryString, fieldName, analyzer);
 		Map<String, Integer> queryTermsCounts = new HashMap<String, Integer>();
 		for (String qt : queryTerms) {
 			queryTermsCounts.put(qt, queryTermsCounts.getOrDefault(qt, 0) + 1);
 		}
 
-		Set<Integer> allDocIds = new HashSet<Integer>();
-		for (Set<Integer> s : termInvertedList.values()) {
-			allDocIds.addAll(s);
-		}
-		int docIdsCount = allDocIds.size();
+		// Anserini drains each term score queue with a loop bound that shrinks with
+		// every poll, so only the better half of the queue is ever read (here and in
+		// the final selection). Keep that behaviour, but size the heaps to it up front.
+		int numTerms = termPool.numTerms();
+		int topTermsPerQueryTerm = Math.min(Math.max(M, K), (numTerms + 1) / 2);
 
-		// Each priority queue corresponds to a query term: The p-queue itself stores
-		// all terms in the reranking pool and their reranking scores to the query term.
-		List<PriorityQueue<Pair<String, Double>>> allTermScoresPQ = new ArrayList<PriorityQueue<Pair<String, Double>>>();
+		TermStatistics termStatistics = SearcherResources.forSearcher(searcher).getTermStatistics(fieldName);
+		List<QueryTermStats> poolQueryTerms = new ArrayList<QueryTermStats>();
 		for (Map.Entry<String, Integer> q : queryTermsCounts.entrySet()) {
 			String queryTerm = q.getKey();
-			long df = reader.docFreq(new Term(fieldName, queryTerm));
+			long df = termStatistics.docFreq(queryTerm);
 			if (df == 0L) {
 				continue;
 			}
 			float idf = (float) Math.log((1 + docCount) / df);
 			int qtf = q.getValue();
-			if (termInvertedList.containsKey(queryTerm)) {
-				PriorityQueue<Pair<String, Double>> termScorePQ = new PriorityQueue<Pair<String, Double>>(
-				    new ScoreComparator());
-				double selfMI = computeMutualInformation(termInvertedList.get(queryTerm), termInvertedList.get(queryTerm),
-				    docIdsCount);
-				for (Map.Entry<String, Set<Integer>> termEntry : termInvertedList.entrySet()) {
-					double score;
-					if (termEntry.getKey().equals(queryTerm)) { // The mutual information to itself will always be 1
-						score = idf * qtf;
-					} else {
-						double crossMI = computeMutualInformation(termInvertedList.get(queryTerm), termEntry.getValue(),
-						    docIdsCount);
-						score = idf * beta * qtf * crossMI / selfMI;
-					}
-					termScorePQ.add(Pair.of(termEntry.getKey(), score));
-				}
-				allTermScoresPQ.add(termScorePQ);
+			int queryOrd = termPool.ordinal(queryTerm);
+			if (queryOrd >= 0) {
+				poolQueryTerms.add(new QueryTermStats(termPool, queryOrd, idf, qtf));
 			}
 		}
 
-		Map<String, Double> aggTermScores = new HashMap<String, Double>();
-		for (PriorityQueue<Pair<String, Double>> termScores : allTermScoresPQ) {
-			for (int i = 0; i < Math.min(termScores.size(), Math.max(M, K)); i++) {
-				Pair<String, Double> termScore = termScores.poll();
-				String term = termScore.getLeft();
-				Double score = termScore.getRight();
-				if (score - 0.0 > 1e-8) {
-					aggTermScores.put(term, aggTermScores.getOrDefault(term, 0.0) + score);
+		// Each heap corresponds to a query term (or a chunk of pool terms for one query
+		// term in parallel mode): it keeps the best scoring terms in the reranking pool
+		// for that query term. Chunks are merged back in order, so the parallel mode
+		// selects exactly the same terms with the same scores as the serial one.
+		int chunksPerQueryTerm = 1;
+		ExecutorService scoringExecutor = parallelScoring ? executor : null;
+		if (scoringExecutor != null && !poolQueryTerms.isEmpty()) {
+			chunksPerQueryTerm = Math.min((numTerms + MIN_POOL_TERMS_PER_TASK - 1) / MIN_POOL_TERMS_PER_TASK,
+			    (maxTasks + poolQueryTerms.size() - 1) / poolQueryTerms.size());
+			chunksPerQueryTerm = Math.max(chunksPerQueryTerm, 1);
+		}
+		final int numChunks = chunksPerQueryTerm;
+		TermScoreHeap[] chunkHeaps = new TermScoreHeap[poolQueryTerms.size() * numChunks];
+		ParallelRunner.run(scoringExecutor, chunkHeaps.length, maxTasks, item -> {
+			checkTimeAllowed();
+			QueryTermStats queryTerm = poolQueryTerms.get(item / numChunks);
+			int chunk = item % numChunks;
+			int from = (int) ((long) numTerms * chunk / numChunks);
+			int to = (int) ((long) numTerms * (chunk + 1) / numChunks);
+			TermScoreHeap chunkHeap = new TermScoreHeap(topTermsPerQueryTerm);
+			for (int ord = from; ord < to; ord++) {
+				double score;
+				if (ord == queryTerm.ord) { // The mutual information to itself will always be 1
+					score = queryTerm.idf * queryTerm.qtf;
+				} else {
+					double crossMI = termPool.mutualInformation(queryTerm.docs, queryTerm.ord, ord);
+					score = queryTerm.idf * beta * queryTerm.qtf * crossMI / queryTerm.selfMI;
+				}
+				chunkHeap.offer(ord, score);
+			}
+			chunkHeaps[item] = chunkHeap;
+		});
+
+		// scores are summed up across query terms
+		double[] aggTermScores = new double[numTerms];
+		boolean[] hasAggTermScore = new boolean[numTerms];
+		int numAggTermScores = 0;
+		for (int q = 0; q < poolQueryTerms.size(); q++) {
+			TermScoreHeap queryTermHeap = chunkHeaps[q * numChunks];
+			if (numChunks > 1) {
+				queryTermHeap = new TermScoreHeap(topTermsPerQueryTerm);
+				for (int chunk = 0; chunk < numChunks; chunk++) {
+					TermScoreHeap chunkHeap = chunkHeaps[q * numChunks + chunk];
+					double[] chunkScores = new double[chunkHeap.size()];
+					int[] chunkOrds = chunkHeap.drain(chunkScores);
+					for (int i = 0; i < chunkOrds.length; i++) {
+						queryTermHeap.offer(chunkOrds[i], chunkScores[i]);
+					}
+				}
+			}
+			double[] scores = new double[queryTermHeap.size()];
+			int[] ords = queryTermHeap.drain(scores);
+			for (int i = 0; i < ords.length; i++) {
+				if (scores[i] - 0.0 > 1e-8) {
+					if (!hasAggTermScore[ords[i]]) {
+						hasAggTermScore[ords[i]] = true;
+						numAggTermScores++;
+					}
+					aggTermScores[ords[i]] += scores[i];
 				}
 			}
 		}
-		PriorityQueue<Pair<String, Double>> termScoresPQ = new PriorityQueue<Pair<String, Double>>(new ScoreComparator());
-		for (Map.Entry<String, Double> termScore : aggTermScores.entrySet()) {
-			termScoresPQ.add(Pair.of(termScore.getKey(), termScore.getValue() / queryTerms.size()));
+
+		TermScoreHeap termScoreHeap = new TermScoreHeap(Math.min(M, (numAggTermScores + 1) / 2));
+		for (int ord = 0; ord < numTerms; ord++) {
+			if (hasAggTermScore[ord]) {
+				termScoreHeap.offer(ord, aggTermScores[ord] / queryTerms.size());
+			}
 		}
+		double[] scores = new double[termScoreHeap.size()];
+		int[] ords = termScoreHeap.drain(scores);
 		Map<String, Double> resultTermScores = new HashMap<String, Double>();
-		for (int i = 0; i < Math.min(termScoresPQ.size(), M); i++) {
-			Pair<String, Double> termScore = termScoresPQ.poll();
-			String term = termScore.getKey();
-			double score = termScore.getValue();
-			resultTermScores.put(term, score);
+		for (int i = 0; i < ords.length; i++) {
+			resultTermScores.put(termPool.term(ords[i]), scores[i]);
 		}
 
 		return resultTermScores;
 	}
 
-	private double computeMutualInformation(Set<Integer> docidsX, Set<Integer> docidsY, int totalDocCount) {
-		int x1 = docidsX.size(), y1 = docidsY.size(); // num docs where x occurs
-		int x0 = totalDocCount - x1, y0 = totalDocCount - y1; // num docs where x does not occur
-
-		if (x1 == 0 || x0 == 0 || y1 == 0 || y0 == 0) {
-			return 0;
-		}
-
-		float pX0 = 1.0f * x0 / totalDocCount;
-		float pX1 = 1.0f * x1 / totalDocCount;
-		float pY0 = 1.0f * y0 / totalDocCount;
-		float pY1 = 1.0f * y1 / totalDocCount;
-
-		// get the intersection of docIds
-		Set<Integer> docidsXClone = new HashSet<Integer>(docidsX); // directly operate on docidsX will change it permanently
-		docidsXClone.retainAll(docidsY);
-		int numXY11 = docidsXClone.size();
-		int numXY10 = x1 - numXY11; // doc num that x occurs but y doesn't
-		int numXY01 = y1 - numXY11; // doc num that y occurs but x doesn't
-		int numXY00 = totalDocCount - numXY11 - numXY10 - numXY01; // doc num that neither x nor y occurs
-
-		float pXY11 = 1.0f * numXY11 / totalDocCount;
-		float pXY10 = 1.0f * numXY10 / totalDocCount;
-		float pXY01 = 1.0f * numXY01 / totalDocCount;
-		float pXY00 = 1.0f * numXY00 / totalDocCount;
-
-		double m00 = 0, m01 = 0, m10 = 0, m11 = 0;
-		if (pXY00 != 0)
-			m00 = pXY00 * Math.log(pXY00 / (pX0 * pY0));
-		if (pXY01 != 0)
-			m01 = pXY01 * Math.log(pXY01 / (pX0 * pY1));
-		if (pXY10 != 0)
-			m10 = pXY10 * Math.log(pXY10 / (pX1 * pY0));
-		if (pXY11 != 0)
-			m11 = pXY11 * Math.log(pXY11 / (pX1 * pY1));
-		return m00 + m10 + m01 + m11;
+	private boolean hasTimedOut() {
+		return timeAllowed != null && timeAllowed.hasTimedOut();
+	}
+
+	private void checkTimeAllowed() {
+		if (hasTimedOut()) {
+			throw new TimeAllowedExceededException();
+		}
+	}
+
+	// unwinds an expansion whose time budget is spent, expansions are not cached then
+	private static class TimeAllowedExceededException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		private TimeAllowedExceededException() {
+			super("time allowed for reranking exceeded", null, false, false);
+		}
+	}
+
+	private static class QueryTermStats {
+		private final int ord;
+		private final float idf;
+		private final int qtf;
+		private final FixedBitSet docs;
+		private final double selfMI;
+
+		private QueryTermStats(AxiomTermPool termPool, int ord, float idf, int qtf) {
+			this.ord = ord;
+			this.idf = idf;
+			this.qtf = qtf;
+			this.docs = termPool.bitSet(ord);
+			this.selfMI = termPool.mutualInformation(docs, ord, ord);
+		}
 	}
 }
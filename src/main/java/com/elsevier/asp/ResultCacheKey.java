@@ -0,0 +1,139 @@
+package com.elsevier.asp;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.search.Query;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.schema.IndexSchema;
+
+/**
+ * Key of the result cache. Two requests get the same key when they rank the
+ * same way: the query is compared by its analyzed tokens, and only the
+ * parameters that change the ranking take part, so requests that differ in
+ * start, rows or fl share one entry. Filters are compared as parsed
+ * queries, as in the filterCache, since df, q.op or $param references
+ * elsewhere in the request change what an fq string means. The request
+ * parameters are kept (but not compared) so that the ranking can be
+ * recomputed during autowarming.
+ */
+public class ResultCacheKey {
+
+	// parameters with these prefixes tune query A or query B
+	private static final String[] RANKING_PARAM_PREFIXES = { "sdm.", "rm3.", "ax.", "rerank." };
+
+	private final List<String> tokens;
+	private final String similarity;
+	private final String qtype;
+	private final String rtype;
+	private final int rerankCutoff;
+	private final Map<String,String> rankingParams;
+	private final List<Query> filters;
+	// compared as a set, since filters are intersected
+	private final Set<Query> filterSet;
+	private final int hashCode;
+	private final SolrParams params;
+
+	private ResultCacheKey(List<String> tokens, String similarity, String qtype, String rtype, int rerankCutoff,
+			Map<String,String> rankingParams, List<Query> filters, SolrParams params) {
+		this.tokens = tokens;
+		this.similarity = similarity;
+		this.qtype = qtype;
+		this.rtype = rtype;
+		this.rerankCutoff = rerankCutoff;
+		this.rankingParams = rankingParams;
+		this.filters = filters;
+		this.filterSet = new HashSet<Query>(filters);
+		this.params = params;
+		this.hashCode = Objects.hash(tokens, similarity, qtype, rtype, rerankCutoff, rankingParams, filterSet);
+	}
+
+	/**
+	 * @param filters the request's fq, as returned by RerankPipeline.parseFilters
+	 * @param tokenCache analyzed queries of the core
+	 */
+	public static ResultCacheKey create(SolrParams reqParams, List<Query> filters, IndexSchema schema,
+			QueryTokenCache tokenCache) {
+		String similarity = reqParams.get("sim", "bm");
+		String fieldName = "para_text_" + similarity;
+		Analyzer analyzer = schema.getFieldType(fieldName).getQueryAnalyzer();
+		List<String> tokens = tokenCache.tokenizeQuery(reqParams.get("q"), fieldName, analyzer);
+
+		Map<String,String> rankingParams = new TreeMap<String,String>();
+		Iterator<String> names = reqParams.getParameterNamesIterator();
+		while (names.hasNext()) {
+			String name = names.next();
+			if ("_restrict".equals(name) || isRankingParam(name)) {
+				rankingParams.put(name, reqParams.get(name));
+			}
+		}
+
+		return new ResultCacheKey(tokens, similarity, reqParams.get("qtype", "bow"), reqParams.get("rtype", "rm3"),
+				Integer.valueOf(reqParams.get("rerankCutoff", "50")), rankingParams, filters,
+				new ModifiableSolrParams(reqParams));
+	}
+
+	private static boolean isRankingParam(String name) {
+		if ("rerank.timeAllowed".equals(name)) {
+			// only complete rankings are cached, whatever their budget was
+			return false;
+		}
+		if ("minExactCount".equals(name)) {
+			// numFound is part of the ranking
+			return true;
+		}
+		for (String prefix : RANKING_PARAM_PREFIXES) {
+			if (name.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** parsed filters of the request, reused when the ranking is recomputed */
+	public List<Query> getFilters() {
+		return filters;
+	}
+
+	/** parameters of the request the key was created for */
+	public SolrParams getParams() {
+		return params;
+	}
+
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof ResultCacheKey)) {
+			return false;
+		}
+		ResultCacheKey other = (ResultCacheKey) obj;
+		return hashCode == other.hashCode
+				&& rerankCutoff == other.rerankCutoff
+				&& tokens.equals(other.tokens)
+				&& similarity.equals(other.similarity)
+				&& qtype.equals(other.qtype)
+				&& rtype.equals(other.rtype)
+				&& rankingParams.equals(other.rankingParams)
+				&& filterSet.equals(other.filterSet);
+	}
+
+	@Override
+	public String toString() {
+		return "ResultCacheKey(" + tokens + ", sim=" + similarity + ", qtype=" + qtype + ", rtype=" + rtype
+				+ ", rerankCutoff=" + rerankCutoff + ", " + rankingParams + ", fq=" + filters + ")";
+	}
+}
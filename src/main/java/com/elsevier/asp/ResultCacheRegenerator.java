@@ -0,0 +1,37 @@
+package com.elsevier.asp;
+
+import java.io.IOException;
+
+import org.apache.solr.search.CacheRegenerator;
+import org.apache.solr.search.SolrCache;
+import org.apache.solr.search.SolrIndexSearcher;
+
+/**
+ * Autowarms the result cache by rerunning the cached queries against the new
+ * searcher. Reranking runs on the warming thread, without the handler's
+ * thread pool; parallel and serial reranking give the same results. The
+ * filters parsed for the old searcher are reused, as queries they do not
+ * depend on it.
+ */
+public class ResultCacheRegenerator implements CacheRegenerator {
+
+	@Override
+	@SuppressWarnings({"rawtypes", "unchecked"})
+	public boolean regenerateItem(SolrIndexSearcher newSearcher, SolrCache newCache, SolrCache oldCache,
+			Object oldKey, Object oldVal) throws IOException {
+		ResultCacheKey key = (ResultCacheKey) oldKey;
+		Ranking ranking;
+		try {
+			ranking = new RerankPipeline(null, 1).run(key.getParams(), key.getFilters(), newSearcher,
+					new StageTimings(new AnseriniMetrics()));
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+		if (ranking.getErrorMessage() == null && !ranking.isPartial()) {
+			newCache.put(key, ranking);
+		}
+		return true;
+	}
+}
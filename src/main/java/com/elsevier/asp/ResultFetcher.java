@@ -0,0 +1,124 @@
+package com.elsevier.asp;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.SolrDocumentFetcher;
+import org.apache.solr.search.SolrIndexSearcher;
+
+/**
+ * Loads the fields listed in fl for one page of reranked results. Stored
+ * fields are read through the searcher's document cache, limited to the
+ * requested fields, with the page's docids visited in increasing order so
+ * that each segment's stored fields are read front to back. Fields that are
+ * not stored but have docValues are read from docValues instead.
+ */
+public class ResultFetcher {
+
+	private final SolrIndexSearcher searcher;
+	private final String[] fieldList;
+	private final String textFieldName;
+	private final Set<String> storedFields = new HashSet<String>();
+	private final Set<String> docValueFields = new HashSet<String>();
+
+	/**
+	 * @param fieldList fields to return for each document
+	 * @param textFieldName field holding the paragraph text for the current
+	 *        similarity, returned as para_text
+	 */
+	public ResultFetcher(SolrIndexSearcher searcher, String[] fieldList, String textFieldName) {
+		this.searcher = searcher;
+		this.fieldList = fieldList;
+		this.textFieldName = textFieldName;
+		IndexSchema schema = searcher.getSchema();
+		for (String name : fieldList) {
+			String sourceName = sourceField(name);
+			SchemaField field = schema.getFieldOrNull(sourceName);
+			if (field != null && !field.stored() && field.hasDocValues()) {
+				docValueFields.add(sourceName);
+			} else {
+				storedFields.add(sourceName);
+			}
+		}
+	}
+
+	/**
+	 * Returns documents start to start + rows - 1 of the results, in ranked
+	 * order, with their reranked score.
+	 */
+	public SolrDocumentList fetch(ScoreDoc[] results, int start, int rows, long numFound) throws IOException {
+		return fetch(results, start, rows, numFound, true);
+	}
+
+	/**
+	 * As {@link #fetch(ScoreDoc[], int, int, long)}, with numFound flagged as
+	 * a lower bound if it is not exact.
+	 */
+	public SolrDocumentList fetch(ScoreDoc[] results, int start, int rows, long numFound, boolean numFoundExact)
+			throws IOException {
+		int end = (int) Math.min(results.length, (long) start + rows);
+		int[] docIds = new int[Math.max(0, end - start)];
+		for (int i = start; i < end; i++) {
+			docIds[i - start] = results[i].doc;
+		}
+		Arrays.sort(docIds);
+
+		// stored fields in docid order
+		Map<Integer,Document> storedDocs = new HashMap<Integer,Document>();
+		if (!storedFields.isEmpty()) {
+			for (int docId : docIds) {
+				storedDocs.put(docId, searcher.doc(docId, storedFields));
+			}
+		}
+		// docValues in docid order
+		Map<Integer,SolrDocument> docValueDocs = new HashMap<Integer,SolrDocument>();
+		if (!docValueFields.isEmpty()) {
+			SolrDocumentFetcher docFetcher = searcher.getDocFetcher();
+			for (int docId : docIds) {
+				SolrDocument values = new SolrDocument();
+				docFetcher.decorateDocValueFields(values, docId, docValueFields);
+				docValueDocs.put(docId, values);
+			}
+		}
+
+		SolrDocumentList doclist = new SolrDocumentList();
+		for (int i = start; i < end; i++) {
+			ScoreDoc scoreDoc = results[i];
+			Document idoc = storedDocs.get(scoreDoc.doc);
+			SolrDocument values = docValueDocs.get(scoreDoc.doc);
+			SolrDocument oDoc = new SolrDocument();
+			for (String fieldElementName : fieldList) {
+				String sourceName = sourceField(fieldElementName);
+				if (docValueFields.contains(sourceName)) {
+					oDoc.addField(fieldElementName, values.getFirstValue(sourceName));
+				} else if (! "para_text".equals(fieldElementName)) {
+					oDoc.addField(fieldElementName, idoc.get(sourceName));
+				} else {
+					IndexableField[] text = idoc.getFields(sourceName);
+					oDoc.addField("para_text", (text.length == 0) ? null : text[0]);
+				}
+			}
+			oDoc.addField("score", scoreDoc.score);
+			doclist.add(oDoc);
+		}
+		doclist.setNumFound(numFound);
+		doclist.setNumFoundExact(numFoundExact);
+		doclist.setStart(start);
+		return doclist;
+	}
+
+	private String sourceField(String name) {
+		return "para_text".equals(name) ? textFieldName : name;
+	}
+}
@@ -0,0 +1,101 @@
+package com.elsevier.asp;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.solr.search.SolrIndexSearcher;
+
+/**
+ * Index-wide structures that the rerankers need on every request but that only
+ * change when the index does. One instance is kept per index reader; it is
+ * dropped when the reader is closed, and can be built ahead of the first query
+ * by registering {@link AnseriniWarmupListener} for newSearcher events.
+ */
+public class SearcherResources {
+
+	private static final Map<Object,SearcherResources> RESOURCES =
+			new ConcurrentHashMap<Object,SearcherResources>();
+
+	// fields the rerankers read term statistics of, one per similarity
+	private static final String[] TEXT_FIELDS = { "para_text_bm", "para_text_ql" };
+
+	private final IndexReader reader;
+	private final Map<String,TermStatistics> termStatistics = new ConcurrentHashMap<String,TermStatistics>();
+	private final ExpansionCache expansionCache = new ExpansionCache();
+	private volatile BackgroundSample backgroundSample;
+
+	private SearcherResources(IndexReader reader) {
+		this.reader = reader;
+	}
+
+	public static SearcherResources forSearcher(SolrIndexSearcher searcher) {
+		IndexReader reader = searcher.getIndexReader();
+		IndexReader.CacheHelper cacheHelper = reader.getReaderCacheHelper();
+		if (cacheHelper == null) {
+			// reader can not tell us when it goes away, so don't cache anything
+			return new SearcherResources(reader);
+		}
+		IndexReader.CacheKey key = cacheHelper.getKey();
+		SearcherResources resources = RESOURCES.get(key);
+		if (resources == null) {
+			SearcherResources created = new SearcherResources(reader);
+			resources = RESOURCES.putIfAbsent(key, created);
+			if (resources == null) {
+				resources = created;
+				cacheHelper.addClosedListener(closedKey -> RESOURCES.remove(closedKey));
+			}
+		}
+		return resources;
+	}
+
+	public BackgroundSample getBackgroundSample() throws IOException {
+		BackgroundSample sample = backgroundSample;
+		if (sample == null) {
+			synchronized (this) {
+				sample = backgroundSample;
+				if (sample == null) {
+					sample = BackgroundSample.build(reader, "id");
+					backgroundSample = sample;
+				}
+			}
+		}
+		return sample;
+	}
+
+	/**
+	 * Returns the term statistics of the field, building them on first use if
+	 * the warmup listener has not.
+	 */
+	public TermStatistics getTermStatistics(String fieldName) throws IOException {
+		TermStatistics statistics = termStatistics.get(fieldName);
+		if (statistics == null) {
+			synchronized (termStatistics) {
+				statistics = termStatistics.get(fieldName);
+				if (statistics == null) {
+					statistics = TermStatistics.build(reader, fieldName);
+					termStatistics.put(fieldName, statistics);
+				}
+			}
+		}
+		return statistics;
+	}
+
+	/** term statistics built so far, without building any */
+	public Collection<TermStatistics> getBuiltTermStatistics() {
+		return termStatistics.values();
+	}
+
+	public ExpansionCache getExpansionCache() {
+		return expansionCache;
+	}
+
+	public void warm() throws IOException {
+		getBackgroundSample();
+		for (String fieldName : TEXT_FIELDS) {
+			getTermStatistics(fieldName);
+		}
+	}
+}
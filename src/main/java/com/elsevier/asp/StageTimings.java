@@ -0,0 +1,109 @@
+package com.elsevier.asp;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+
+/**
+ * Times the stages of one request. Each finished stage updates the stage's
+ * timer and allocation histogram in {@link AnseriniMetrics}, and is kept in
+ * order so it can be reported in the response header. Stages may nest, a
+ * stage's figures include those of the stages inside it. Allocations are
+ * those of the request thread only, work handed to the reranking thread
+ * pool is not counted. Not thread safe.
+ */
+public class StageTimings {
+
+	private static final com.sun.management.ThreadMXBean THREAD_BEAN = allocationBean();
+
+	private final AnseriniMetrics metrics;
+	private final NamedList<Object> stages = new SimpleOrderedMap<Object>();
+
+	public StageTimings(AnseriniMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	public AnseriniMetrics getMetrics() {
+		return metrics;
+	}
+
+	/** starts timing a stage, which ends when the returned Stage is closed */
+	public Stage start(String name) {
+		return new Stage(name);
+	}
+
+	/** finished stages in the order they ended, with their time in ms and allocated bytes */
+	public NamedList<Object> toNamedList() {
+		return stages;
+	}
+
+	/**
+	 * Stages of several requests added up by name, in the order each name
+	 * first ended, with their total time in ms and how many times they ran.
+	 */
+	public static NamedList<Object> sum(Iterable<StageTimings> timings) {
+		Map<String,double[]> totals = new LinkedHashMap<String,double[]>();
+		for (StageTimings t : timings) {
+			for (Map.Entry<String,Object> e : t.stages) {
+				double[] total = totals.computeIfAbsent(e.getKey(), k -> new double[2]);
+				total[0] += (Double) ((NamedList<?>) e.getValue()).get("time");
+				total[1]++;
+			}
+		}
+		NamedList<Object> sum = new SimpleOrderedMap<Object>();
+		for (Map.Entry<String,double[]> e : totals.entrySet()) {
+			NamedList<Object> stage = new SimpleOrderedMap<Object>();
+			stage.add("time", e.getValue()[0]);
+			stage.add("count", (long) e.getValue()[1]);
+			sum.add(e.getKey(), stage);
+		}
+		return sum;
+	}
+
+	public class Stage implements AutoCloseable {
+
+		private final String name;
+		private final long startTime;
+		private final long startBytes;
+
+		private Stage(String name) {
+			this.name = name;
+			this.startBytes = allocatedBytes();
+			this.startTime = System.nanoTime();
+		}
+
+		@Override
+		public void close() {
+			long elapsed = System.nanoTime() - startTime;
+			long allocated = (startBytes < 0) ? -1 : allocatedBytes() - startBytes;
+			metrics.record(name, elapsed, allocated);
+			NamedList<Object> stage = new SimpleOrderedMap<Object>();
+			stage.add("time", elapsed / 1000000.0);
+			if (allocated >= 0) {
+				stage.add("allocatedBytes", allocated);
+			}
+			stages.add(name, stage);
+		}
+	}
+
+	// bytes allocated so far by the current thread, -1 if the JVM can not tell
+	private static long allocatedBytes() {
+		if (THREAD_BEAN == null || !THREAD_BEAN.isThreadAllocatedMemoryEnabled()) {
+			return -1;
+		}
+		return THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static com.sun.management.ThreadMXBean allocationBean() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+			return (com.sun.management.ThreadMXBean) bean;
+		}
+		return null;
+	}
+}
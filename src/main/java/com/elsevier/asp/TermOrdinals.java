@@ -0,0 +1,44 @@
+package com.elsevier.asp;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
+
+/**
+ * Assigns dense int ordinals to terms in order of first appearance. Feature
+ * vectors sharing one instance can be combined by ordinal without hashing
+ * strings, and terms read from documents are numbered by their bytes,
+ * without being turned into strings. Not thread safe, meant to be shared by
+ * the vectors of a single request.
+ */
+public class TermOrdinals {
+
+	private final BytesRefHash terms = new BytesRefHash();
+	private final BytesRef scratch = new BytesRef();
+
+	public int ordinal(String term) {
+		return ordinal(new BytesRef(term));
+	}
+
+	public int ordinal(BytesRef term) {
+		int ord = terms.add(term);
+		return (ord < 0) ? -ord - 1 : ord;
+	}
+
+	/** ordinal of the term, or -1 if it has not been seen */
+	public int find(String term) {
+		return terms.find(new BytesRef(term));
+	}
+
+	public String term(int ord) {
+		return terms.get(ord, scratch).utf8ToString();
+	}
+
+	/** bytes of the term, only valid until the next call */
+	public BytesRef bytes(int ord) {
+		return terms.get(ord, scratch);
+	}
+
+	public int size() {
+		return terms.size();
+	}
+}
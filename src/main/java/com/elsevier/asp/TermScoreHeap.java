@@ -0,0 +1,97 @@
+package com.elsevier.asp;
+
+/**
+ * Bounded heap keeping the top k (term ordinal, score) pairs, ordered by
+ * descending score and then by ascending ordinal. Since term ordinals follow
+ * sorted term order, this is the same order the Axiomatic reranker used to
+ * get from a PriorityQueue of (term, score) pairs, without boxing.
+ */
+public class TermScoreHeap {
+
+	private final int[] ords;
+	private final double[] scores;
+	private int size;
+
+	public TermScoreHeap(int k) {
+		this.ords = new int[k];
+		this.scores = new double[k];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void offer(int ord, double score) {
+		if (size < ords.length) {
+			ords[size] = ord;
+			scores[size] = score;
+			upHeap(size++);
+		} else if (size > 0 && isWorse(ords[0], scores[0], ord, score)) {
+			ords[0] = ord;
+			scores[0] = score;
+			downHeap(0);
+		}
+	}
+
+	/** empties the heap, returning term ordinals best first, with their scores in {@code scoresOut} */
+	public int[] drain(double[] scoresOut) {
+		int n = size;
+		int[] sortedOrds = new int[n];
+		for (int i = n - 1; i >= 0; i--) {
+			sortedOrds[i] = ords[0];
+			scoresOut[i] = scores[0];
+			size--;
+			ords[0] = ords[size];
+			scores[0] = scores[size];
+			downHeap(0);
+		}
+		return sortedOrds;
+	}
+
+	// true if (ordA, scoreA) ranks after (ordB, scoreB)
+	private static boolean isWorse(int ordA, double scoreA, int ordB, double scoreB) {
+		int cmp = Double.compare(scoreA, scoreB);
+		return cmp < 0 || (cmp == 0 && ordA > ordB);
+	}
+
+	private void upHeap(int i) {
+		int ord = ords[i];
+		double score = scores[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!isWorse(ord, score, ords[parent], scores[parent])) {
+				break;
+			}
+			ords[i] = ords[parent];
+			scores[i] = scores[parent];
+			i = parent;
+		}
+		ords[i] = ord;
+		scores[i] = score;
+	}
+
+	private void downHeap(int i) {
+		if (size == 0) {
+			return;
+		}
+		int ord = ords[i];
+		double score = scores[i];
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && isWorse(ords[child + 1], scores[child + 1], ords[child], scores[child])) {
+				child++;
+			}
+			if (!isWorse(ords[child], scores[child], ord, score)) {
+				break;
+			}
+			ords[i] = ords[child];
+			scores[i] = scores[child];
+			i = child;
+		}
+		ords[i] = ord;
+		scores[i] = score;
+	}
+}
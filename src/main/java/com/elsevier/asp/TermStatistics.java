@@ -0,0 +1,134 @@
+package com.elsevier.asp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * The terms of one field of an index reader common enough for RM3 to leave
+ * out of its feedback vectors, found once per reader and field (see
+ * {@link SearcherResources}) so that RM3 looks them up instead of seeking
+ * every segment's terms dictionary for every feedback term. Only these are
+ * held: the document frequencies of other terms, which the Axiomatic
+ * reranker needs for a few query terms per request, are read from the
+ * reader. Terms can be looked up by their bytes, so terms read from
+ * documents need not be turned into strings. Safe for any number of threads
+ * at once.
+ */
+public class TermStatistics {
+
+	// RM3 leaves out terms found in more than this fraction of the documents
+	private static final float COMMON_TERM_RATIO = 0.1f;
+
+	private final IndexReader reader;
+	private final String fieldName;
+	// in term order, for binary search
+	private final BytesRef[] commonTerms;
+	private final int numDocs;
+	private final long numCandidates;
+	private final long buildMillis;
+
+	private TermStatistics(IndexReader reader, String fieldName, BytesRef[] commonTerms, int numDocs,
+			long numCandidates, long buildMillis) {
+		this.reader = reader;
+		this.fieldName = fieldName;
+		this.commonTerms = commonTerms;
+		this.numDocs = numDocs;
+		this.numCandidates = numCandidates;
+		this.buildMillis = buildMillis;
+	}
+
+	/**
+	 * Walks the terms dictionary of each segment on its own, rather than the
+	 * merged one, keeping the terms frequent enough in a segment that they
+	 * may be common in the index: a term in more than a tenth of the live
+	 * documents is, in at least one segment, in more than its share of them.
+	 * The few candidates are then counted over the whole reader. Document
+	 * frequencies include deleted documents, as the reader's own do.
+	 */
+	public static TermStatistics build(IndexReader reader, String fieldName) throws IOException {
+		long startTime = System.currentTimeMillis();
+		int numDocs = reader.numDocs();
+		int maxDoc = reader.maxDoc();
+		double threshold = (double) COMMON_TERM_RATIO * numDocs;
+		SortedSet<BytesRef> candidates = new TreeSet<BytesRef>();
+		for (LeafReaderContext leaf : reader.leaves()) {
+			Terms terms = leaf.reader().terms(fieldName);
+			if (terms == null) {
+				continue;
+			}
+			// this segment's share of the threshold, by its share of the documents
+			double leafThreshold = threshold * leaf.reader().maxDoc() / maxDoc;
+			TermsEnum termsEnum = terms.iterator();
+			BytesRef text;
+			while ((text = termsEnum.next()) != null) {
+				if (termsEnum.docFreq() > leafThreshold && !candidates.contains(text)) {
+					candidates.add(BytesRef.deepCopyOf(text));
+				}
+			}
+		}
+		List<BytesRef> commonTerms = new ArrayList<BytesRef>();
+		for (BytesRef candidate : candidates) {
+			if (reader.docFreq(new Term(fieldName, candidate)) > threshold) {
+				commonTerms.add(candidate);
+			}
+		}
+		return new TermStatistics(reader, fieldName, commonTerms.toArray(new BytesRef[commonTerms.size()]),
+				numDocs, candidates.size(), System.currentTimeMillis() - startTime);
+	}
+
+	public long docFreq(String term) throws IOException {
+		return docFreq(new BytesRef(term));
+	}
+
+	/** the reader's document frequency of the term, read from its terms dictionaries */
+	public long docFreq(BytesRef term) throws IOException {
+		return reader.docFreq(new Term(fieldName, term));
+	}
+
+	/** true for terms in more than a tenth of the documents, which RM3 does not expand with */
+	public boolean isCommon(BytesRef term) {
+		return Arrays.binarySearch(commonTerms, term) >= 0;
+	}
+
+	public boolean isCommon(String term) {
+		return isCommon(new BytesRef(term));
+	}
+
+	/** live documents of the reader, the denominator of the common term ratio */
+	public int getNumDocs() {
+		return numDocs;
+	}
+
+	/** terms counted over the whole reader, those common in some segment */
+	public long getNumCandidates() {
+		return numCandidates;
+	}
+
+	public int getNumCommonTerms() {
+		return commonTerms.length;
+	}
+
+	public long getBuildMillis() {
+		return buildMillis;
+	}
+
+	public long ramBytesUsed() {
+		long bytes = 0L;
+		for (BytesRef term : commonTerms) {
+			bytes += RamUsageEstimator.sizeOf(term.bytes) + RamUsageEstimator.shallowSizeOf(term);
+		}
+		return bytes + RamUsageEstimator.shallowSizeOf(commonTerms);
+	}
+}
@@ -0,0 +1,108 @@
+package com.elsevier.asp;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.SolrIndexSearcher;
+
+/**
+ * Terms of the documents of one field with their frequencies, as read by
+ * the RM3 and Axiomatic rerankers. They come from the field's forward index
+ * when the schema has one (see {@link ForwardIndex}), which is read from
+ * docValues without decompressing term vectors, and from the field's term
+ * vectors otherwise, or for documents indexed before the forward index was
+ * added. Both give the same terms and frequencies. Reading documents in
+ * increasing docid order is cheapest, since docValues only move forward.
+ * Not thread safe, meant to be used by a single request; threads reading
+ * documents at the same time each use their own {@link #copy()}.
+ */
+public class TermVectorSource {
+
+	private final IndexReader reader;
+	private final String fieldName;
+	private final List<LeafReaderContext> leaves;
+	// per leaf forward index iterators, null if there is no forward index to read
+	private final BinaryDocValues[] forwardIndexes;
+	private final String forwardIndexField;
+
+	private TermVectorSource(IndexReader reader, String fieldName, String forwardIndexField) {
+		this.reader = reader;
+		this.fieldName = fieldName;
+		this.leaves = reader.leaves();
+		this.forwardIndexField = forwardIndexField;
+		this.forwardIndexes = (forwardIndexField == null) ? null : new BinaryDocValues[leaves.size()];
+	}
+
+	/**
+	 * @param useForwardIndex false to always read term vectors
+	 */
+	public static TermVectorSource forField(SolrIndexSearcher searcher, String fieldName, boolean useForwardIndex) {
+		String forwardIndexField = null;
+		if (useForwardIndex) {
+			SchemaField field = searcher.getSchema().getFieldOrNull(fieldName + ForwardIndex.FIELD_SUFFIX);
+			if (field != null && field.hasDocValues()) {
+				forwardIndexField = field.getName();
+			}
+		}
+		return new TermVectorSource(searcher.getIndexReader(), fieldName, forwardIndexField);
+	}
+
+	/**
+	 * Whether terms are read from the forward index, for documents that have
+	 * one. Expansions are cached by it, since the two sources need not agree,
+	 * for instance once the field's analyzer has changed.
+	 */
+	public boolean usesForwardIndex() {
+		return forwardIndexField != null;
+	}
+
+	/** a source reading the same field, with iterators of its own */
+	public TermVectorSource copy() {
+		return new TermVectorSource(reader, fieldName, forwardIndexField);
+	}
+
+	/** the index segments, in docid order */
+	public List<LeafReaderContext> leaves() {
+		return leaves;
+	}
+
+	/** calls the visitor for each term of the document, in term order */
+	public void visit(int docId, ForwardIndex.TermVisitor visitor) throws IOException {
+		if (forwardIndexes != null && visitForwardIndex(docId, visitor)) {
+			return;
+		}
+		Terms terms = reader.getTermVector(docId, fieldName);
+		if (terms == null) {
+			return;
+		}
+		TermsEnum termsEnum = terms.iterator();
+		while (termsEnum.next() != null) {
+			visitor.visit(termsEnum.term(), (int) termsEnum.totalTermFreq());
+		}
+	}
+
+	// false if the document has no forward index entry
+	private boolean visitForwardIndex(int docId, ForwardIndex.TermVisitor visitor) throws IOException {
+		int leafIndex = ReaderUtil.subIndex(docId, leaves);
+		LeafReaderContext leaf = leaves.get(leafIndex);
+		int leafDoc = docId - leaf.docBase;
+		BinaryDocValues docValues = forwardIndexes[leafIndex];
+		if (docValues == null || docValues.docID() > leafDoc) {
+			docValues = DocValues.getBinary(leaf.reader(), forwardIndexField);
+			forwardIndexes[leafIndex] = docValues;
+		}
+		if (!docValues.advanceExact(leafDoc)) {
+			return false;
+		}
+		ForwardIndex.decode(docValues.binaryValue(), visitor);
+		return true;
+	}
+}
@@ -0,0 +1,75 @@
+package com.elsevier.asp;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.JSONResponseWriter;
+import org.apache.solr.response.QueryResponseWriter;
+import org.apache.solr.response.SolrQueryResponse;
+
+/**
+ * Writes the ranking exported by the /anserini handler as a TREC run, one
+ * "qid Q0 docno rank score runtag" line per document, ready for trec_eval.
+ * The query id and run tag are taken from the trec.qid and trec.runTag
+ * parameters, the docno from the field named by trec.docno (para_id by
+ * default); documents without a docno are left out and ranks count only
+ * the lines written. The queries of a batch request are written one after
+ * the other under their own qid. Errors are written as JSON, like any other
+ * Solr response.
+ */
+public class TrecRunResponseWriter implements QueryResponseWriter {
+
+	public static final String NAME = "trec";
+
+	private final JSONResponseWriter errorWriter = new JSONResponseWriter();
+
+	@Override
+	public void init(@SuppressWarnings("rawtypes") NamedList args) {
+	}
+
+	@Override
+	public String getContentType(SolrQueryRequest req, SolrQueryResponse resp) {
+		if (resp.getException() != null) {
+			return errorWriter.getContentType(req, resp);
+		}
+		return CONTENT_TYPE_TEXT_UTF8;
+	}
+
+	@Override
+	public void write(Writer writer, SolrQueryRequest req, SolrQueryResponse resp) throws IOException {
+		Object docs = resp.getValues().get("docs");
+		Object results = resp.getValues().get("results");
+		if (resp.getException() != null || !(docs instanceof RankingExport || results instanceof List)) {
+			errorWriter.write(writer, req, resp);
+			return;
+		}
+		String runTag = req.getParams().get("trec.runTag", "anserini");
+		if (docs instanceof RankingExport) {
+			write(writer, req.getParams().get("trec.qid", "1"), (RankingExport) docs, runTag);
+			return;
+		}
+		// a batch request, failed queries have no lines
+		for (Object result : (List<?>) results) {
+			BatchResult batchResult = (BatchResult) result;
+			if (!batchResult.isFailed()) {
+				write(writer, batchResult.getQid(), batchResult.getExport(), runTag);
+			}
+		}
+	}
+
+	private static void write(Writer writer, String qid, RankingExport docs, String runTag) throws IOException {
+		// documents without a docno are left out and the ones after them
+		// move up, so that ranks have no gaps
+		int[] written = new int[1];
+		// the handler exports the docno field only
+		docs.forEach((rank, doc, values) -> {
+			if (values[0] != null) {
+				written[0]++;
+				writer.write(qid + " Q0 " + values[0] + " " + written[0] + " " + doc.score + " " + runTag + "\n");
+			}
+		});
+	}
+}
@@ -0,0 +1,49 @@
+package com.elsevier.asp;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Checks that each rtype has its own permits, and that permits are given back.
+ */
+public class AdmissionControllerTest
+    extends TestCase
+{
+    public AdmissionControllerTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( AdmissionControllerTest.class );
+    }
+
+    public void testPermitsPerRerankType() throws Exception
+    {
+        AdmissionController admission = new AdmissionController( 0, 1, 2, 10L );
+        AdmissionController.Permit ax = admission.acquire( "ax" );
+        assertNotNull( ax );
+        // the only ax permit is taken, after the queue timeout the request is turned away
+        assertNull( admission.acquire( "ax" ) );
+        // other types are not affected, and rm3 is unlimited
+        AdmissionController.Permit id1 = admission.acquire( "id" );
+        AdmissionController.Permit id2 = admission.acquire( "unknown" );
+        assertNotNull( id1 );
+        assertNotNull( id2 );
+        assertNull( admission.acquire( "id" ) );
+        for ( int i = 0; i < 10; i++ )
+        {
+            assertNotNull( admission.acquire( "rm3" ) );
+        }
+
+        ax.close();
+        id1.close();
+        try ( AdmissionController.Permit permit = admission.acquire( "ax" ) )
+        {
+            assertNotNull( permit );
+        }
+        assertNotNull( admission.acquire( "id" ) );
+    }
+}
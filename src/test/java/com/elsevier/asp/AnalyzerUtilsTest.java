@@ -0,0 +1,74 @@
+package com.elsevier.asp;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Checks that a failed query analysis leaves the analyzer usable.
+ */
+public class AnalyzerUtilsTest
+    extends TestCase
+{
+    public AnalyzerUtilsTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( AnalyzerUtilsTest.class );
+    }
+
+    public void testStreamClosedAfterFailure()
+    {
+        Analyzer analyzer = new Analyzer()
+        {
+            @Override
+            protected TokenStreamComponents createComponents( String fieldName )
+            {
+                Tokenizer tokenizer = new WhitespaceTokenizer();
+                return new TokenStreamComponents( tokenizer, new FailOnToken( tokenizer ) );
+            }
+        };
+        assertTrue( AnalyzerUtils.tokenizeQuery( "iron fail nail", "text", analyzer ).isEmpty() );
+        // reusing the components of an unclosed stream would throw an IllegalStateException
+        assertEquals( Arrays.asList( "iron", "nail" ), AnalyzerUtils.tokenizeQuery( "iron nail", "text", analyzer ) );
+    }
+
+    private static class FailOnToken
+        extends TokenFilter
+    {
+        private final CharTermAttribute termAttr = addAttribute( CharTermAttribute.class );
+
+        private FailOnToken( TokenStream input )
+        {
+            super( input );
+        }
+
+        @Override
+        public boolean incrementToken() throws IOException
+        {
+            if ( !input.incrementToken() )
+            {
+                return false;
+            }
+            if ( "fail".equals( termAttr.toString() ) )
+            {
+                throw new IOException( "analysis failed" );
+            }
+            return true;
+        }
+    }
+}
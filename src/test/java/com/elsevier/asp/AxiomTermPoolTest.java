@@ -0,0 +1,191 @@
+package com.elsevier.asp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Checks the Axiomatic reranking pool against a naive inverted index of
+ * Set&lt;Integer&gt; postings, for dense (bitset) and sparse terms, pools
+ * merged from several builders, and the ordering of TermScoreHeap.
+ */
+public class AxiomTermPoolTest
+    extends TestCase
+{
+    private static final int POOL_SIZE = 640;
+
+    public AxiomTermPoolTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( AxiomTermPoolTest.class );
+    }
+
+    public void testMatchesNaivePostings()
+    {
+        List<List<String>> docTerms = randomDocuments( new Random( 11L ) );
+        Map<String, Set<Integer>> naive = new TreeMap<String, Set<Integer>>();
+        Set<Integer> docsWithTerms = new HashSet<Integer>();
+        AxiomTermPool.Builder builder = new AxiomTermPool.Builder( POOL_SIZE );
+        for ( int doc = 0; doc < docTerms.size(); doc++ )
+        {
+            for ( String term : docTerms.get( doc ) )
+            {
+                builder.add( doc, new BytesRef( term ) );
+                naive.computeIfAbsent( term, t -> new HashSet<Integer>() ).add( doc );
+                docsWithTerms.add( doc );
+            }
+        }
+        AxiomTermPool pool = builder.build();
+
+        assertEquals( naive.size(), pool.numTerms() );
+        assertEquals( docsWithTerms.size(), pool.numDocs() );
+        assertEquals( -1, pool.ordinal( "absent" ) );
+        // ordinals follow term order
+        List<String> terms = new ArrayList<String>( naive.keySet() );
+        boolean dense = false, sparse = false;
+        for ( int ord = 0; ord < pool.numTerms(); ord++ )
+        {
+            assertEquals( terms.get( ord ), pool.term( ord ) );
+            assertEquals( ord, pool.ordinal( terms.get( ord ) ) );
+            assertEquals( naive.get( terms.get( ord ) ).size(), pool.docFreq( ord ) );
+            if ( pool.docFreq( ord ) * 64 >= POOL_SIZE )
+            {
+                dense = true;
+            }
+            else
+            {
+                sparse = true;
+            }
+        }
+        assertTrue( "both posting kinds are covered", dense && sparse );
+
+        for ( int x = 0; x < pool.numTerms(); x++ )
+        {
+            FixedBitSet xBits = pool.bitSet( x );
+            for ( int doc = 0; doc < POOL_SIZE; doc++ )
+            {
+                assertEquals( naive.get( terms.get( x ) ).contains( doc ), xBits.get( doc ) );
+            }
+            for ( int y = 0; y < pool.numTerms(); y++ )
+            {
+                Set<Integer> both = new HashSet<Integer>( naive.get( terms.get( x ) ) );
+                both.retainAll( naive.get( terms.get( y ) ) );
+                assertEquals( terms.get( x ) + " " + terms.get( y ), both.size(), pool.intersectionCount( xBits, y ) );
+            }
+        }
+    }
+
+    public void testMergedBuildersMatchSerialBuilder()
+    {
+        List<List<String>> docTerms = randomDocuments( new Random( 12L ) );
+        AxiomTermPool.Builder serial = new AxiomTermPool.Builder( POOL_SIZE );
+        AxiomTermPool.Builder[] groups = new AxiomTermPool.Builder[3];
+        for ( int i = 0; i < groups.length; i++ )
+        {
+            groups[i] = new AxiomTermPool.Builder( POOL_SIZE );
+        }
+        for ( int doc = 0; doc < docTerms.size(); doc++ )
+        {
+            // contiguous groups of documents, as when reading segment by segment
+            AxiomTermPool.Builder group = groups[doc * groups.length / docTerms.size()];
+            for ( String term : docTerms.get( doc ) )
+            {
+                serial.add( doc, term );
+                group.add( doc, new BytesRef( term ) );
+            }
+        }
+        AxiomTermPool.Builder merged = new AxiomTermPool.Builder( POOL_SIZE );
+        for ( AxiomTermPool.Builder group : groups )
+        {
+            merged.addAll( group );
+        }
+
+        AxiomTermPool expected = serial.build();
+        AxiomTermPool actual = merged.build();
+        assertEquals( expected.numTerms(), actual.numTerms() );
+        assertEquals( expected.numDocs(), actual.numDocs() );
+        for ( int ord = 0; ord < expected.numTerms(); ord++ )
+        {
+            assertEquals( expected.term( ord ), actual.term( ord ) );
+            assertEquals( expected.docFreq( ord ), actual.docFreq( ord ) );
+            assertEquals( expected.bitSet( ord ), actual.bitSet( ord ) );
+        }
+    }
+
+    public void testTermScoreHeapOrder()
+    {
+        TermScoreHeap heap = new TermScoreHeap( 3 );
+        heap.offer( 5, 0.5 );
+        heap.offer( 2, 0.9 );
+        heap.offer( 7, 0.5 );
+        heap.offer( 1, 0.5 );
+        heap.offer( 3, 0.1 );
+        heap.offer( 4, 0.9 );
+        assertEquals( 3, heap.size() );
+        double[] scores = new double[3];
+        // best scores first, ties to the lower ordinal
+        assertTrue( Arrays.equals( new int[] { 2, 4, 1 }, heap.drain( scores ) ) );
+        assertTrue( Arrays.equals( new double[] { 0.9, 0.9, 0.5 }, scores ) );
+        assertEquals( 0, heap.size() );
+
+        // same selection as sorting all pairs, with many ties
+        Random random = new Random( 13L );
+        for ( int k : new int[] { 1, 10, 100, 1000 } )
+        {
+            List<double[]> pairs = new ArrayList<double[]>();
+            TermScoreHeap randomHeap = new TermScoreHeap( k );
+            for ( int ord = 0; ord < 500; ord++ )
+            {
+                double score = random.nextInt( 20 ) / 20.0;
+                pairs.add( new double[] { ord, score } );
+                randomHeap.offer( ord, score );
+            }
+            Collections.shuffle( pairs, random );
+            pairs.sort( ( a, b ) -> a[1] != b[1] ? Double.compare( b[1], a[1] ) : Double.compare( a[0], b[0] ) );
+            int n = Math.min( k, pairs.size() );
+            double[] heapScores = new double[n];
+            int[] heapOrds = randomHeap.drain( heapScores );
+            assertEquals( n, heapOrds.length );
+            for ( int i = 0; i < n; i++ )
+            {
+                assertEquals( (int) pairs.get( i )[0], heapOrds[i] );
+                assertEquals( pairs.get( i )[1], heapScores[i] );
+            }
+        }
+    }
+
+    // zipf-like terms, so a few are dense and most are sparse; some documents have none
+    private static List<List<String>> randomDocuments( Random random )
+    {
+        List<List<String>> docs = new ArrayList<List<String>>();
+        for ( int doc = 0; doc < POOL_SIZE; doc++ )
+        {
+            Set<String> terms = new HashSet<String>();
+            int numTerms = ( doc % 17 == 0 ) ? 0 : 1 + random.nextInt( 8 );
+            while ( terms.size() < numTerms )
+            {
+                int rank = (int) Math.floor( Math.pow( 400, random.nextDouble() ) ) - 1;
+                terms.add( "t" + Integer.toString( rank, 26 ) );
+            }
+            docs.add( new ArrayList<String>( terms ) );
+        }
+        return docs;
+    }
+}
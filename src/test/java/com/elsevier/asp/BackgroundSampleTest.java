@@ -0,0 +1,108 @@
+package com.elsevier.asp;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MultiBits;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Checks that the background sample only holds live documents with an id,
+ * and that a seeded sample draws the same documents every time, which
+ * ax.seed and the expansion cache rely on.
+ */
+public class BackgroundSampleTest
+    extends TestCase
+{
+    public BackgroundSampleTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( BackgroundSampleTest.class );
+    }
+
+    public void testLiveDocsWithIdAndSeededDraws() throws Exception
+    {
+        try ( ByteBuffersDirectory directory = new ByteBuffersDirectory() )
+        {
+            try ( IndexWriter writer = new IndexWriter( directory, new IndexWriterConfig() ) )
+            {
+                for ( int i = 0; i < 500; i++ )
+                {
+                    Document doc = new Document();
+                    doc.add( new StringField( "key", "k" + i, Field.Store.NO ) );
+                    // every fifth document has no id
+                    if ( i % 5 != 0 )
+                    {
+                        doc.add( new SortedDocValuesField( "id", new BytesRef( "d" + i ) ) );
+                    }
+                    writer.addDocument( doc );
+                    if ( i % 120 == 0 )
+                    {
+                        writer.commit();
+                    }
+                }
+                for ( int i = 0; i < 500; i += 7 )
+                {
+                    writer.deleteDocuments( new Term( "key", "k" + i ) );
+                }
+            }
+
+            try ( DirectoryReader reader = DirectoryReader.open( directory ) )
+            {
+                BackgroundSample sample = BackgroundSample.build( reader, "id" );
+                Bits liveDocs = MultiBits.getLiveDocs( reader );
+                int expected = 0;
+                for ( int i = 0; i < 500; i++ )
+                {
+                    if ( i % 5 != 0 && i % 7 != 0 )
+                    {
+                        expected++;
+                    }
+                }
+                assertEquals( expected, sample.size() );
+
+                Set<Integer> drawn = new HashSet<Integer>();
+                Random random = new Random( 42L );
+                Random again = new Random( 42L );
+                for ( int i = 0; i < 5000; i++ )
+                {
+                    int doc = sample.sample( random );
+                    assertEquals( doc, sample.sample( again ) );
+                    assertTrue( doc >= 0 && doc < reader.maxDoc() );
+                    assertTrue( liveDocs == null || liveDocs.get( doc ) );
+                    drawn.add( doc );
+                }
+                // 5000 draws over a few hundred documents reach all of them
+                assertEquals( expected, drawn.size() );
+
+                // a sample rebuilt from the same reader draws the same documents
+                BackgroundSample rebuilt = BackgroundSample.build( reader, "id" );
+                random = new Random( 7L );
+                again = new Random( 7L );
+                for ( int i = 0; i < 100; i++ )
+                {
+                    assertEquals( sample.sample( random ), rebuilt.sample( again ) );
+                }
+            }
+        }
+    }
+}
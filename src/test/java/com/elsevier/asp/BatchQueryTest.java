@@ -0,0 +1,68 @@
+package com.elsevier.asp;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.ContentStream;
+import org.apache.solr.common.util.ContentStreamBase;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Checks that batch queries are read from JSON bodies and from TREC style
+ * topic lines.
+ */
+public class BatchQueryTest
+    extends TestCase
+{
+    public BatchQueryTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( BatchQueryTest.class );
+    }
+
+    public void testJsonBody() throws Exception
+    {
+        List<BatchQuery> queries = BatchQuery.parse( body( "application/json",
+            "{\"queries\": [{\"qid\": 301, \"q\": \"what are nails made of\"}, {\"q\": \"iron\"}]}" ) );
+        assertEquals( 2, queries.size() );
+        assertEquals( "301", queries.get( 0 ).getQid() );
+        assertEquals( "what are nails made of", queries.get( 0 ).getQuery() );
+        assertEquals( "2", queries.get( 1 ).getQid() );
+
+        try
+        {
+            BatchQuery.parse( body( "application/json", "[{\"qid\": 1}]" ) );
+            fail( "a query without q must be rejected" );
+        }
+        catch ( SolrException e )
+        {
+            assertEquals( SolrException.ErrorCode.BAD_REQUEST.code, e.code() );
+        }
+    }
+
+    public void testTopicLines() throws Exception
+    {
+        List<BatchQuery> queries = BatchQuery.parse( body( "text/plain",
+            "301\twhat are nails made of\n\n302  iron   nails \n" ) );
+        assertEquals( 2, queries.size() );
+        assertEquals( "301", queries.get( 0 ).getQid() );
+        assertEquals( "what are nails made of", queries.get( 0 ).getQuery() );
+        assertEquals( "302", queries.get( 1 ).getQid() );
+        assertEquals( "iron   nails", queries.get( 1 ).getQuery() );
+    }
+
+    private static Iterable<ContentStream> body( String contentType, String text )
+    {
+        ContentStreamBase.StringStream stream = new ContentStreamBase.StringStream( text );
+        stream.setContentType( contentType );
+        return Collections.<ContentStream> singletonList( stream );
+    }
+}
@@ -0,0 +1,106 @@
+package com.elsevier.asp;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.solr.search.SortedIntDocSet;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Checks that rescoring the candidates ranks them like the search for query B
+ * filtered to the candidates.
+ */
+public class CandidateRescorerTest
+    extends TestCase
+{
+    private static final String[] WORDS = { "nail", "made", "iron", "steel", "wood", "hammer", "screw", "copper" };
+
+    public CandidateRescorerTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( CandidateRescorerTest.class );
+    }
+
+    public void testMatchesFilteredSearch() throws Exception
+    {
+        Random random = new Random( 7L );
+        Directory directory = new ByteBuffersDirectory();
+        try ( IndexWriter writer = new IndexWriter( directory, new IndexWriterConfig( new StandardAnalyzer() ) ) )
+        {
+            for ( int i = 0; i < 2000; i++ )
+            {
+                StringBuilder text = new StringBuilder();
+                for ( int j = 0; j < 1 + random.nextInt( 20 ); j++ )
+                {
+                    text.append( WORDS[random.nextInt( WORDS.length )] ).append( ' ' );
+                }
+                Document doc = new Document();
+                doc.add( new TextField( "text", text.toString(), Field.Store.NO ) );
+                writer.addDocument( doc );
+                if ( i % 300 == 0 )
+                {
+                    // several segments, so that candidates span leaves
+                    writer.commit();
+                }
+            }
+        }
+
+        try ( DirectoryReader reader = DirectoryReader.open( directory ) )
+        {
+            IndexSearcher searcher = new IndexSearcher( reader );
+            ScoreDoc[] candidates = searcher.search( new TermQuery( new Term( "text", "nail" ) ), 500 ).scoreDocs;
+            Query queryB = new BooleanQuery.Builder()
+                .add( new BoostQuery( new TermQuery( new Term( "text", "iron" ) ), 0.7f ), BooleanClause.Occur.SHOULD )
+                .add( new BoostQuery( new TermQuery( new Term( "text", "steel" ) ), 0.2f ), BooleanClause.Occur.SHOULD )
+                .add( new BoostQuery( new TermQuery( new Term( "text", "hammer" ) ), 0.1f ), BooleanClause.Occur.SHOULD )
+                .build();
+
+            int[] docs = new int[candidates.length];
+            for ( int i = 0; i < candidates.length; i++ )
+            {
+                docs[i] = candidates[i].doc;
+            }
+            Arrays.sort( docs );
+            Query filtered = new BooleanQuery.Builder()
+                .add( queryB, BooleanClause.Occur.MUST )
+                .add( new SortedIntDocSet( docs ).getTopFilter(), BooleanClause.Occur.FILTER )
+                .build();
+
+            TopDocs expected = searcher.search( filtered, candidates.length );
+            TopDocs actual = CandidateRescorer.rescore( searcher, queryB, candidates );
+
+            assertTrue( actual.scoreDocs.length > 0 );
+            assertEquals( expected.scoreDocs.length, actual.scoreDocs.length );
+            for ( int i = 0; i < expected.scoreDocs.length; i++ )
+            {
+                assertEquals( expected.scoreDocs[i].doc, actual.scoreDocs[i].doc );
+                assertEquals( expected.scoreDocs[i].score, actual.scoreDocs[i].score );
+            }
+        }
+    }
+}
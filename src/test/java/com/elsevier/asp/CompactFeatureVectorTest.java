@@ -0,0 +1,95 @@
+package com.elsevier.asp;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Checks that CompactFeatureVector behaves like the HashMap based
+ * FeatureVector it stands in for.
+ */
+public class CompactFeatureVectorTest
+    extends TestCase
+{
+    public CompactFeatureVectorTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( CompactFeatureVectorTest.class );
+    }
+
+    public void testPruneToSizeKeepsHeaviestFeatures()
+    {
+        TermOrdinals termOrdinals = new TermOrdinals();
+        FeatureVector expected = new FeatureVector();
+        FeatureVector actual = new CompactFeatureVector( termOrdinals );
+        fill( new Random( 1L ), 500, expected, actual );
+
+        expected.pruneToSize( 20 );
+        actual.pruneToSize( 20 );
+
+        assertEquals( expected.getFeatures(), actual.getFeatures() );
+        for ( String term : expected.getFeatures() )
+        {
+            assertEquals( expected.getFeatureWeight( term ), actual.getFeatureWeight( term ) );
+        }
+    }
+
+    public void testScaleToUnitL1Norm()
+    {
+        FeatureVector expected = new FeatureVector();
+        FeatureVector actual = new CompactFeatureVector( new TermOrdinals() );
+        fill( new Random( 2L ), 100, expected, actual );
+
+        expected.scaleToUnitL1Norm();
+        actual.scaleToUnitL1Norm();
+
+        assertEquals( 1.0, actual.computeL1Norm(), 1e-6 );
+        for ( String term : expected.getFeatures() )
+        {
+            assertEquals( expected.getFeatureWeight( term ), actual.getFeatureWeight( term ), 1e-7f );
+        }
+    }
+
+    public void testInterpolate()
+    {
+        TermOrdinals termOrdinals = new TermOrdinals();
+        FeatureVector expectedQuery = FeatureVector.fromTerms( Arrays.asList( "nails", "made", "of", "nails" ) );
+        FeatureVector actualQuery = CompactFeatureVector.fromTerms(
+            Arrays.asList( "nails", "made", "of", "nails" ), termOrdinals );
+        FeatureVector expectedDocs = new FeatureVector();
+        FeatureVector actualDocs = new CompactFeatureVector( termOrdinals );
+        fill( new Random( 3L ), 50, expectedDocs, actualDocs );
+        expectedDocs.addFeatureWeight( "made", 0.25f );
+        actualDocs.addFeatureWeight( "made", 0.25f );
+
+        FeatureVector expected = FeatureVector.interpolate( expectedQuery, expectedDocs, 0.3f );
+        FeatureVector actual = FeatureVector.interpolate( actualQuery, actualDocs, 0.3f );
+
+        assertTrue( actual instanceof CompactFeatureVector );
+        assertEquals( expected.getFeatures(), actual.getFeatures() );
+        for ( String term : expected.getFeatures() )
+        {
+            assertEquals( expected.getFeatureWeight( term ), actual.getFeatureWeight( term ) );
+        }
+    }
+
+    private static void fill( Random random, int numTerms, FeatureVector... vectors )
+    {
+        for ( int i = 0; i < numTerms; i++ )
+        {
+            String term = "t" + random.nextInt( numTerms * 2 );
+            float weight = random.nextInt( 100000 ) / 100.0f;
+            for ( FeatureVector vector : vectors )
+            {
+                vector.addFeatureWeight( term, weight );
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.elsevier.asp;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.search.SolrIndexSearcher;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Checks that a reranker reuses the expansion of an earlier request with the
+ * same parameters, and computes a new one when fbDocs, fbTerms, the seed of
+ * the background documents or the source of the document terms differ.
+ */
+public class ExpansionCacheTest
+    extends TestCase
+{
+    private static final String FIELD = "para_text_bm";
+
+    private static final List<String> TERMS = Arrays.asList( "steel" );
+
+    private TestCore testCore;
+
+    private AnseriniMetrics metrics;
+
+    public ExpansionCacheTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ExpansionCacheTest.class );
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        testCore = new TestCore();
+        testCore.add( document( "a", "steel alloys resist corrosion at high temperature" ),
+            document( "b", "stainless steel contains chromium and nickel" ),
+            document( "c", "carbon steel corrosion in sea water" ),
+            document( "d", "iron ore is reduced to pig iron in a blast furnace" ),
+            document( "e", "nickel alloys for turbine blades" ) );
+        metrics = new AnseriniMetrics();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        testCore.close();
+    }
+
+    public void testRM3SameParametersHit() throws Exception
+    {
+        rm3( rm3Params(), 1L );
+        rm3( rm3Params(), 1L );
+        assertCounts( 1, 1 );
+    }
+
+    public void testRM3ChangedParametersMiss() throws Exception
+    {
+        rm3( rm3Params(), 1L );
+        Map<String, Float> params = rm3Params();
+        params.put( "fbDocs", 2.0F );
+        rm3( params, 1L );
+        params = rm3Params();
+        params.put( "fbTerms", 5.0F );
+        rm3( params, 1L );
+        params = rm3Params();
+        params.put( "forwardIndex", 0.0F );
+        rm3( params, 1L );
+        assertCounts( 0, 4 );
+        // each of them is cached on its own
+        rm3( params, 1L );
+        assertCounts( 1, 4 );
+    }
+
+    public void testAxiomSameSeedHit() throws Exception
+    {
+        axiom( axiomParams(), 1L );
+        axiom( axiomParams(), 1L );
+        assertCounts( 1, 1 );
+    }
+
+    public void testAxiomChangedSeedOrTermSourceMiss() throws Exception
+    {
+        axiom( axiomParams(), 1L );
+        axiom( axiomParams(), 2L );
+        // nor does one without a seed
+        axiom( axiomParams(), null );
+        Map<String, Float> params = axiomParams();
+        params.put( "forwardIndex", 0.0F );
+        axiom( params, 1L );
+        assertCounts( 0, 4 );
+    }
+
+    private void rm3( Map<String, Float> params, Long seed ) throws IOException
+    {
+        RerankedResult result = testCore.getCore().withSearcher( searcher -> new RerankerFactory( seed, null, 1,
+            new StageTimings( metrics ) ).rerankWithRM3( queryA( searcher ), params, TERMS, FIELD, null, searcher ) );
+        assertNull( result.getErrorMessage() );
+        assertFalse( result.getQuery().clauses().isEmpty() );
+    }
+
+    private void axiom( Map<String, Float> params, Long seed ) throws IOException
+    {
+        RerankedResult result = testCore.getCore().withSearcher( searcher -> new RerankerFactory( seed, null, 1,
+            new StageTimings( metrics ) ).rerankWithAxiom( queryA( searcher ), params, TERMS, FIELD, null,
+                searcher ) );
+        assertNull( result.getErrorMessage() );
+    }
+
+    private void assertCounts( long hits, long misses )
+    {
+        assertEquals( hits, metrics.getExpansionCacheHits().getCount() );
+        assertEquals( misses, metrics.getExpansionCacheMisses().getCount() );
+    }
+
+    private static ScoreDoc[] queryA( SolrIndexSearcher searcher ) throws IOException
+    {
+        return searcher.search( new TermQuery( new Term( FIELD, "steel" ) ), 10 ).scoreDocs;
+    }
+
+    private static Map<String, Float> rm3Params()
+    {
+        Map<String, Float> params = new HashMap<String, Float>();
+        params.put( "fbDocs", 3.0F );
+        params.put( "fbTerms", 10.0F );
+        params.put( "originalQueryWeight", 0.5F );
+        params.put( "_restrict", 0.0F );
+        return params;
+    }
+
+    private static Map<String, Float> axiomParams()
+    {
+        Map<String, Float> params = new HashMap<String, Float>();
+        params.put( "R", 2.0F );
+        params.put( "N", 2.0F );
+        params.put( "K", 10.0F );
+        params.put( "M", 5.0F );
+        params.put( "beta", 0.4F );
+        params.put( "_restrict", 0.0F );
+        return params;
+    }
+
+    private static SolrInputDocument document( String id, String text )
+    {
+        SolrInputDocument document = new SolrInputDocument();
+        document.addField( "id", id );
+        document.addField( FIELD, text );
+        return document;
+    }
+}
@@ -0,0 +1,53 @@
+package com.elsevier.asp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.lucene.util.BytesRef;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Checks that forward index entries decode to the terms and frequencies
+ * they were encoded from, in term order.
+ */
+public class ForwardIndexTest
+    extends TestCase
+{
+    public ForwardIndexTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ForwardIndexTest.class );
+    }
+
+    public void testRoundTrip() throws Exception
+    {
+        SortedMap<BytesRef, Integer> termFrequencies = new TreeMap<BytesRef, Integer>();
+        for ( String term : new String[] { "nails", "nail", "iron", "ironing", "n", "zinc", "\u00e9tain" } )
+        {
+            termFrequencies.put( new BytesRef( term ), term.length() );
+        }
+        byte[] encoded = ForwardIndex.encode( termFrequencies );
+
+        List<String> terms = new ArrayList<String>();
+        List<Integer> freqs = new ArrayList<Integer>();
+        ForwardIndex.decode( new BytesRef( encoded ), ( term, freq ) -> {
+            terms.add( term.utf8ToString() );
+            freqs.add( freq );
+        } );
+        assertEquals( Arrays.asList( "iron", "ironing", "n", "nail", "nails", "zinc", "\u00e9tain" ), terms );
+        assertEquals( Arrays.asList( 4, 7, 1, 4, 5, 4, 5 ), freqs );
+
+        ForwardIndex.decode( new BytesRef( ForwardIndex.encode( new TreeMap<BytesRef, Integer>() ) ),
+            ( term, freq ) -> fail( "no terms expected" ) );
+    }
+}
@@ -0,0 +1,106 @@
+package com.elsevier.asp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.MultiDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.request.LocalSolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.update.AddUpdateCommand;
+import org.apache.solr.update.processor.UpdateRequestProcessor;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Checks that forward indexes are written for the values a text field is
+ * indexed with, including those copied to it by copyField, and are left
+ * alone by atomic updates that have not been merged yet.
+ */
+public class ForwardIndexUpdateProcessorFactoryTest
+    extends TestCase
+{
+    private TestCore testCore;
+
+    public ForwardIndexUpdateProcessorFactoryTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ForwardIndexUpdateProcessorFactoryTest.class );
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        testCore = new TestCore();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        testCore.close();
+    }
+
+    public void testOwnValues() throws Exception
+    {
+        SolrInputDocument document = new SolrInputDocument();
+        document.addField( "id", "a" );
+        document.addField( "para_text_bm", "Steel nails and steel screws" );
+        testCore.add( document );
+        assertEquals( Arrays.asList( "and 1", "nails 1", "screws 1", "steel 2" ), forwardIndex( "a" ) );
+    }
+
+    public void testCopyFieldTarget() throws Exception
+    {
+        // abstract is copied to para_text_bm
+        SolrInputDocument document = new SolrInputDocument();
+        document.addField( "id", "b" );
+        document.addField( "abstract", "Corrosion of iron, corrosion of zinc" );
+        testCore.add( document );
+        assertEquals( Arrays.asList( "corrosion 2", "iron 1", "of 2", "zinc 1" ), forwardIndex( "b" ) );
+    }
+
+    public void testAtomicUpdateSkipped() throws Exception
+    {
+        SolrInputDocument document = new SolrInputDocument();
+        document.addField( "id", "c" );
+        document.addField( "para_text_bm", Collections.singletonMap( "set", "stainless steel" ) );
+        ForwardIndexUpdateProcessorFactory factory = new ForwardIndexUpdateProcessorFactory();
+        factory.init( null );
+        try ( LocalSolrQueryRequest req = new LocalSolrQueryRequest( testCore.getCore(),
+            new ModifiableSolrParams() ) )
+        {
+            AddUpdateCommand cmd = new AddUpdateCommand( req );
+            cmd.solrDoc = document;
+            UpdateRequestProcessor processor = factory.getInstance( req, new SolrQueryResponse(), null );
+            processor.processAdd( cmd );
+        }
+        assertNull( document.getField( "para_text_bm_fwd" ) );
+    }
+
+    // the terms and frequencies in the forward index of the document
+    private List<String> forwardIndex( String id ) throws IOException
+    {
+        return testCore.getCore().withSearcher( searcher -> {
+            int docId = searcher.getFirstMatch( new Term( "id", id ) );
+            BinaryDocValues values = MultiDocValues.getBinaryValues( searcher.getIndexReader(),
+                "para_text_bm_fwd" );
+            assertTrue( values.advanceExact( docId ) );
+            List<String> terms = new ArrayList<String>();
+            ForwardIndex.decode( values.binaryValue(), ( term, freq ) -> terms.add( term.utf8ToString() + " "
+                + freq ) );
+            return terms;
+        } );
+    }
+}
@@ -0,0 +1,186 @@
+package com.elsevier.asp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.search.SolrIndexSearcher;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Checks that reading feedback documents and scoring pool terms on the
+ * executor, segment by segment, expands a query with the same terms, in
+ * the same order and with the same weights, as reading them one by one.
+ * The serial and parallel expansions run against two cores indexed alike,
+ * so that neither is taken from the other's expansion cache.
+ */
+public class ParallelRerankTest
+    extends TestCase
+{
+    private static final String FIELD = "para_text_bm";
+
+    private static final List<String> TERMS = Arrays.asList( word( 3 ), word( 7 ) );
+
+    private TestCore serialCore;
+
+    private TestCore parallelCore;
+
+    private ExecutorService executor;
+
+    public ParallelRerankTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ParallelRerankTest.class );
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        serialCore = new TestCore();
+        parallelCore = new TestCore();
+        // four segments of documents drawn from the same vocabulary
+        Random random = new Random( 42 );
+        for ( int segment = 0; segment < 4; segment++ )
+        {
+            List<SolrInputDocument> documents = new ArrayList<SolrInputDocument>();
+            for ( int i = 0; i < 10; i++ )
+            {
+                StringBuilder text = new StringBuilder();
+                for ( int j = 0; j < 15; j++ )
+                {
+                    // lower numbered words more often, as in text
+                    text.append( ' ' ).append( word( (int) ( 200 * Math.pow( random.nextDouble(), 2 ) ) ) );
+                }
+                documents.add( document( segment + "-" + i, text.toString() ) );
+            }
+            serialCore.add( documents.toArray( new SolrInputDocument[documents.size()] ) );
+            parallelCore.add( documents.toArray( new SolrInputDocument[documents.size()] ) );
+        }
+        executor = Executors.newFixedThreadPool( 4 );
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        executor.shutdown();
+        serialCore.close();
+        parallelCore.close();
+    }
+
+    public void testRM3() throws Exception
+    {
+        for ( float forwardIndex : new float[] { 1.0F, 0.0F } )
+        {
+            for ( float compactVectors : new float[] { 0.0F, 1.0F } )
+            {
+                Map<String, Float> params = new HashMap<String, Float>();
+                params.put( "fbDocs", 10.0F );
+                params.put( "fbTerms", 10.0F );
+                params.put( "originalQueryWeight", 0.5F );
+                params.put( "compactVectors", compactVectors );
+                params.put( "forwardIndex", forwardIndex );
+                params.put( "parallelMinDocs", 1.0F );
+                params.put( "_restrict", 0.0F );
+                assertSameExpansion( "rm3", params );
+            }
+        }
+    }
+
+    public void testAxiom() throws Exception
+    {
+        for ( float forwardIndex : new float[] { 1.0F, 0.0F } )
+        {
+            Map<String, Float> params = new HashMap<String, Float>();
+            params.put( "R", 5.0F );
+            params.put( "N", 4.0F );
+            params.put( "K", 50.0F );
+            params.put( "M", 10.0F );
+            params.put( "beta", 0.4F );
+            params.put( "forwardIndex", forwardIndex );
+            params.put( "parallel", 1.0F );
+            params.put( "parallelMinDocs", 1.0F );
+            params.put( "_restrict", 0.0F );
+            assertSameExpansion( "ax", params );
+        }
+    }
+
+    private void assertSameExpansion( String rtype, Map<String, Float> params ) throws IOException
+    {
+        RerankedResult serial = rerank( serialCore, null, rtype, params );
+        RerankedResult parallel = rerank( parallelCore, executor, rtype, params );
+        assertNull( serial.getErrorMessage() );
+        assertNull( parallel.getErrorMessage() );
+        BooleanQuery serialQuery = serial.getQuery();
+        assertTrue( rtype + " " + params, serialQuery.clauses().size() > TERMS.size() );
+        // the clauses in order, with their boosts
+        assertEquals( rtype + " " + params, serialQuery.toString(), parallel.getQuery().toString() );
+        assertEquals( ranking( serial ), ranking( parallel ) );
+    }
+
+    private static RerankedResult rerank( TestCore testCore, ExecutorService executor, String rtype,
+                                          Map<String, Float> params )
+        throws IOException
+    {
+        return testCore.getCore().withSearcher( searcher -> {
+            assertEquals( 4, searcher.getIndexReader().leaves().size() );
+            RerankerFactory factory = new RerankerFactory( 7L, executor, 4, new StageTimings(
+                new AnseriniMetrics() ) );
+            ScoreDoc[] inputs = queryA( searcher );
+            return "rm3".equals( rtype ) ? factory.rerankWithRM3( inputs, params, TERMS, FIELD, null, searcher )
+                : factory.rerankWithAxiom( inputs, params, TERMS, FIELD, null, searcher );
+        } );
+    }
+
+    private static ScoreDoc[] queryA( SolrIndexSearcher searcher ) throws IOException
+    {
+        BooleanQuery.Builder query = new BooleanQuery.Builder();
+        for ( String term : TERMS )
+        {
+            query.add( new TermQuery( new Term( FIELD, term ) ), BooleanClause.Occur.SHOULD );
+        }
+        return searcher.search( query.build(), 20 ).scoreDocs;
+    }
+
+    private static List<String> ranking( RerankedResult result )
+    {
+        List<String> ranking = new ArrayList<String>();
+        for ( ScoreDoc document : result.getDocuments() )
+        {
+            ranking.add( document.doc + " " + document.score );
+        }
+        return ranking;
+    }
+
+    // letters only, as the Axiomatic pool leaves out terms with digits
+    private static String word( int number )
+    {
+        return "w" + (char) ( 'a' + number / 26 ) + (char) ( 'a' + number % 26 );
+    }
+
+    private static SolrInputDocument document( String id, String text )
+    {
+        SolrInputDocument document = new SolrInputDocument();
+        document.addField( "id", id );
+        document.addField( FIELD, text.trim() );
+        return document;
+    }
+}
@@ -0,0 +1,133 @@
+package com.elsevier.asp;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Checks that parallel runs give the same results as serial ones, that the
+ * first failure is rethrown only once running items have finished, errors
+ * of pooled threads included, and that a saturated or shut down executor
+ * leaves the work to the caller.
+ */
+public class ParallelRunnerTest
+    extends TestCase
+{
+    public ParallelRunnerTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ParallelRunnerTest.class );
+    }
+
+    public void testSameResultsAsSerialRun() throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool( 1 );
+        try
+        {
+            long[] serial = new long[200];
+            ParallelRunner.run( null, serial.length, 4, item -> serial[item] = (long) item * item + 7 );
+            long[] parallel = new long[200];
+            ParallelRunner.run( executor, parallel.length, 4, item -> parallel[item] = (long) item * item + 7 );
+            assertTrue( Arrays.equals( serial, parallel ) );
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    public void testFailureRethrownAfterRunningItemsFinish() throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool( 1 );
+        try
+        {
+            CountDownLatch slowItemStarted = new CountDownLatch( 1 );
+            AtomicBoolean slowItemFinished = new AtomicBoolean();
+            IOException failure = new IOException( "item 3" );
+            try
+            {
+                ParallelRunner.run( executor, 50, 2, item -> {
+                    if ( item == 1 )
+                    {
+                        slowItemStarted.countDown();
+                        Thread.sleep( 100 );
+                        slowItemFinished.set( true );
+                    }
+                    else if ( item == 3 )
+                    {
+                        slowItemStarted.await();
+                        throw failure;
+                    }
+                } );
+                fail( "the failure of item 3 is rethrown" );
+            }
+            catch ( IOException e )
+            {
+                assertSame( failure, e );
+            }
+            assertTrue( "the item running when another failed had finished", slowItemFinished.get() );
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    public void testErrorOnPooledThreadRethrownAsIs() throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool( 1 );
+        try
+        {
+            Thread caller = Thread.currentThread();
+            StackOverflowError error = new StackOverflowError( "pooled" );
+            CountDownLatch thrown = new CountDownLatch( 1 );
+            try
+            {
+                ParallelRunner.run( executor, 2, 2, item -> {
+                    if ( Thread.currentThread() != caller )
+                    {
+                        thrown.countDown();
+                        throw error;
+                    }
+                    // keeps the caller from claiming both items
+                    thrown.await( 10, TimeUnit.SECONDS );
+                } );
+                fail( "the error of the pooled thread is rethrown" );
+            }
+            catch ( StackOverflowError e )
+            {
+                assertSame( error, e );
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    public void testCallerRunsItemsWhenExecutorRejects() throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool( 1 );
+        executor.shutdown();
+        assertTrue( executor.awaitTermination( 10, TimeUnit.SECONDS ) );
+        Thread caller = Thread.currentThread();
+        Thread[] ranOn = new Thread[20];
+        ParallelRunner.run( executor, ranOn.length, 4, item -> ranOn[item] = Thread.currentThread() );
+        for ( Thread thread : ranOn )
+        {
+            assertSame( caller, thread );
+        }
+    }
+}
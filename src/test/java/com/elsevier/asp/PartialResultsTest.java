@@ -0,0 +1,97 @@
+package com.elsevier.asp;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.response.SolrQueryResponse;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Checks that a request whose rerank.timeAllowed runs out before query B
+ * is answered with the ranking of query A, flagged as partial, and leaves
+ * no entry in the result cache or the expansion cache.
+ */
+public class PartialResultsTest
+    extends TestCase
+{
+    // a filter that takes longer than the budget, so it is spent before reranking
+    private static final String SLOW_FILTER = "{!sleep ms=50}";
+
+    private TestCore testCore;
+
+    public PartialResultsTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( PartialResultsTest.class );
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        testCore = new TestCore();
+        testCore.add( document( "a", "steel alloys resist corrosion at high temperature" ),
+            document( "b", "stainless steel contains chromium and nickel" ),
+            document( "c", "carbon steel corrosion in sea water" ),
+            document( "d", "nickel alloys for turbine blades" ) );
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        testCore.close();
+    }
+
+    public void testExpiredBudgetRM3() throws Exception
+    {
+        assertPartial( "rm3" );
+    }
+
+    public void testExpiredBudgetAxiom() throws Exception
+    {
+        assertPartial( "ax" );
+    }
+
+    private void assertPartial( String rtype ) throws Exception
+    {
+        SolrQueryResponse partial = search( "rtype", rtype, "rerank.timeAllowed", "1" );
+        assertEquals( Boolean.TRUE, partial.getResponseHeader().get( "partialResults" ) );
+        assertEquals( 0, testCore.getCache( "anseriniResultCache" ).size() );
+
+        // the ranking of query A
+        SolrQueryResponse queryA = search( "rtype", "id" );
+        assertNull( queryA.getResponseHeader().get( "partialResults" ) );
+        assertEquals( queryA.getValues().get( "docs" ).toString(), partial.getValues().get( "docs" ).toString() );
+
+        // without a budget the same request is ranked and expanded from scratch,
+        // rerank.timeAllowed not being part of either cache key
+        SolrQueryResponse full = search( "rtype", rtype );
+        assertNull( full.getResponseHeader().get( "partialResults" ) );
+        NamedList<?> timing = (NamedList<?>) full.getResponseHeader().get( "timing" );
+        assertNotNull( timing.get( "queryA.search" ) );
+        assertNotNull( timing.get( rtype + ".expansion" ) );
+    }
+
+    private SolrQueryResponse search( String... nameValues ) throws Exception
+    {
+        String[] params = new String[nameValues.length + 8];
+        System.arraycopy( nameValues, 0, params, 0, nameValues.length );
+        System.arraycopy( new String[] { "q", "steel corrosion", "fq", SLOW_FILTER, "ax.seed", "1", "debug",
+            "timing" }, 0, params, nameValues.length, 8 );
+        return testCore.request( "/anserini", params );
+    }
+
+    private static SolrInputDocument document( String id, String text )
+    {
+        SolrInputDocument document = new SolrInputDocument();
+        document.addField( "id", id );
+        document.addField( "para_id", id + "-p1" );
+        document.addField( "para_text_bm", text );
+        return document;
+    }
+}
@@ -0,0 +1,186 @@
+package com.elsevier.asp;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Compares the interval and phrase SDM window components with the span ones
+ * they can replace, and two-phase SDM scores with single query ones.
+ */
+public class QueryBuilderFactoryTest
+    extends TestCase
+{
+    private static final String[] WORDS = { "nail", "made", "iron", "steel", "wood", "hammer", "screw", "copper",
+        "head", "shank", "point", "wire" };
+    private static final String[] QUERIES = { "iron nail head", "steel wire nail made", "hammer wood screw",
+        "copper point shank wire iron" };
+
+    private Directory directory;
+    private DirectoryReader reader;
+    private IndexSearcher searcher;
+    private Analyzer analyzer;
+
+    public QueryBuilderFactoryTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( QueryBuilderFactoryTest.class );
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        analyzer = new StandardAnalyzer();
+        directory = new ByteBuffersDirectory();
+        Random random = new Random( 11L );
+        try ( IndexWriter writer = new IndexWriter( directory, new IndexWriterConfig( analyzer ) ) )
+        {
+            for ( int i = 0; i < 1000; i++ )
+            {
+                StringBuilder text = new StringBuilder();
+                for ( int j = 0; j < 5 + random.nextInt( 40 ); j++ )
+                {
+                    text.append( WORDS[random.nextInt( WORDS.length )] ).append( ' ' );
+                }
+                Document doc = new Document();
+                doc.add( new TextField( "text", text.toString(), Field.Store.NO ) );
+                writer.addDocument( doc );
+            }
+        }
+        reader = DirectoryReader.open( directory );
+        searcher = new IndexSearcher( reader );
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        reader.close();
+        directory.close();
+    }
+
+    public void testPhraseOrderedWindowMatchesSpan() throws Exception
+    {
+        for ( String q : QUERIES )
+        {
+            assertEquals( q, windowMatches( q, "span", 1.0f, 0.0f ), windowMatches( q, "phrase", 1.0f, 0.0f ) );
+        }
+    }
+
+    public void testIntervalWindowsMatchSpanWindows() throws Exception
+    {
+        for ( String q : QUERIES )
+        {
+            assertEquals( q, windowMatches( q, "span", 1.0f, 0.0f ), windowMatches( q, "interval", 1.0f, 0.0f ) );
+            assertEquals( q, windowMatches( q, "span", 0.0f, 1.0f ), windowMatches( q, "interval", 0.0f, 1.0f ) );
+        }
+    }
+
+    public void testTopTwentyMostlyAgreeWithSpan() throws Exception
+    {
+        for ( String impl : new String[] { "interval", "phrase" } )
+        {
+            for ( String q : QUERIES )
+            {
+                Set<Integer> expected = topDocs( search( q, "span", 0.85f, 0.1f, 0.05f ), 20 );
+                Set<Integer> actual = topDocs( search( q, impl, 0.85f, 0.1f, 0.05f ), 20 );
+                actual.retainAll( expected );
+                // window weights are small next to the terms component, so the rankings differ little
+                assertTrue( impl + " " + q, actual.size() >= 17 );
+            }
+        }
+    }
+
+    public void testTwoPhaseScoresMatchSeqDepModel() throws Exception
+    {
+        Map<String, Float> params = new HashMap<String, Float>();
+        params.put( "termWeight", 0.85f );
+        params.put( "orderedWindowWeight", 0.1f );
+        params.put( "unorderedWindowWeight", 0.05f );
+        QueryBuilderFactory qbf = new QueryBuilderFactory();
+        for ( String q : QUERIES )
+        {
+            Map<Integer, Float> expected = new HashMap<Integer, Float>();
+            for ( ScoreDoc scoreDoc : search( q, "span", 0.85f, 0.1f, 0.05f ).scoreDocs )
+            {
+                expected.put( scoreDoc.doc, scoreDoc.score );
+            }
+            Query termsQuery = qbf.buildSeqDepModelTermsQuery( q, "text", analyzer, params );
+            Query windowQuery = qbf.buildSeqDepModelWindowQuery( q, "text", analyzer, params, "span" );
+            ScoreDoc[] candidates = searcher.search( termsQuery, 100 ).scoreDocs;
+            TopDocs actual = CandidateRescorer.addScores( searcher, windowQuery, candidates );
+
+            assertEquals( q, candidates.length, actual.scoreDocs.length );
+            for ( int i = 0; i < actual.scoreDocs.length; i++ )
+            {
+                ScoreDoc scoreDoc = actual.scoreDocs[i];
+                assertEquals( q, expected.get( scoreDoc.doc ), scoreDoc.score, 1e-5f );
+                if ( i > 0 )
+                {
+                    assertTrue( q, actual.scoreDocs[i - 1].score >= scoreDoc.score );
+                }
+            }
+        }
+    }
+
+    private static Set<Integer> topDocs( TopDocs topDocs, int n )
+    {
+        Set<Integer> docs = new HashSet<Integer>();
+        for ( int i = 0; i < Math.min( n, topDocs.scoreDocs.length ); i++ )
+        {
+            docs.add( topDocs.scoreDocs[i].doc );
+        }
+        return docs;
+    }
+
+    // documents that get a positive score from the given window components
+    private Set<Integer> windowMatches( String q, String impl, float orderedWeight, float unorderedWeight )
+        throws Exception
+    {
+        Set<Integer> docs = new HashSet<Integer>();
+        for ( ScoreDoc scoreDoc : search( q, impl, 0.0f, orderedWeight, unorderedWeight ).scoreDocs )
+        {
+            if ( scoreDoc.score > 0.0f )
+            {
+                docs.add( scoreDoc.doc );
+            }
+        }
+        assertFalse( q, docs.isEmpty() );
+        return docs;
+    }
+
+    private TopDocs search( String q, String impl, float termWeight, float orderedWeight, float unorderedWeight )
+        throws Exception
+    {
+        Map<String, Float> params = new HashMap<String, Float>();
+        params.put( "termWeight", termWeight );
+        params.put( "orderedWindowWeight", orderedWeight );
+        params.put( "unorderedWindowWeight", unorderedWeight );
+        Query query = new QueryBuilderFactory().buildSeqDepModelQuery( q, "text", analyzer, params, impl );
+        return searcher.search( query, reader.maxDoc() );
+    }
+}
@@ -0,0 +1,59 @@
+package com.elsevier.asp;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Checks that analyzed queries are shared within a cache, per analyzer
+ * instance, and not across caches.
+ */
+public class QueryTokenCacheTest
+    extends TestCase
+{
+    public QueryTokenCacheTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( QueryTokenCacheTest.class );
+    }
+
+    public void testCachesAnalyzedQueries()
+    {
+        QueryTokenCache cache = new QueryTokenCache();
+        Analyzer analyzer = new StandardAnalyzer();
+        List<String> tokens = cache.tokenizeQuery( "What are Nails made of", "text", analyzer );
+        assertEquals( Arrays.asList( "what", "are", "nails", "made", "of" ), tokens );
+        assertSame( tokens, cache.tokenizeQuery( "What are Nails made of", "text", analyzer ) );
+        // another analyzer instance may analyze differently, so it does not share the entry
+        assertNotSame( tokens, cache.tokenizeQuery( "What are Nails made of", "text", new StandardAnalyzer() ) );
+        try
+        {
+            tokens.add( "iron" );
+            fail( "cached tokens must not be modifiable" );
+        }
+        catch ( UnsupportedOperationException e )
+        {
+            // expected
+        }
+    }
+
+    public void testCachesArePerCore()
+    {
+        Analyzer analyzer = new StandardAnalyzer();
+        List<String> tokens = new QueryTokenCache().tokenizeQuery( "iron nail", "text", analyzer );
+        // the handler of another core holds a cache of its own
+        List<String> otherTokens = new QueryTokenCache().tokenizeQuery( "iron nail", "text", analyzer );
+        assertEquals( tokens, otherTokens );
+        assertNotSame( tokens, otherTokens );
+    }
+}
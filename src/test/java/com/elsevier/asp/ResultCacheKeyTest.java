@@ -0,0 +1,85 @@
+package com.elsevier.asp;
+
+import org.apache.solr.common.params.ModifiableSolrParams;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Checks that result cache keys compare filters as parsed queries, so that
+ * parameters an fq refers to, or parses with, tell requests apart, while
+ * the order of the filters and the page requested do not.
+ */
+public class ResultCacheKeyTest
+    extends TestCase
+{
+    private TestCore testCore;
+
+    private final QueryTokenCache tokenCache = new QueryTokenCache();
+
+    public ResultCacheKeyTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ResultCacheKeyTest.class );
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        testCore = new TestCore();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        testCore.close();
+    }
+
+    public void testSameRequestSameKey() throws Exception
+    {
+        ResultCacheKey key = key( "q", "steel alloys", "fq", "{!term f=journal v=$j}", "j", "Steel" );
+        assertEquals( key, key( "q", "steel alloys", "fq", "{!term f=journal v=$j}", "j", "Steel" ) );
+        assertEquals( key.hashCode(),
+            key( "q", "steel alloys", "fq", "{!term f=journal v=$j}", "j", "Steel" ).hashCode() );
+        // pages of the same ranking share the key
+        assertEquals( key,
+            key( "q", "steel alloys", "fq", "{!term f=journal v=$j}", "j", "Steel", "start", "10", "rows", "5" ) );
+    }
+
+    public void testParamReferencedByFilter() throws Exception
+    {
+        assertFalse( key( "q", "steel alloys", "fq", "{!term f=journal v=$j}", "j", "Steel" )
+            .equals( key( "q", "steel alloys", "fq", "{!term f=journal v=$j}", "j", "Iron" ) ) );
+    }
+
+    public void testDefaultFieldOfFilter() throws Exception
+    {
+        assertFalse( key( "q", "steel alloys", "fq", "corrosion", "df", "title" )
+            .equals( key( "q", "steel alloys", "fq", "corrosion", "df", "para_text_bm" ) ) );
+    }
+
+    public void testFilterOrder() throws Exception
+    {
+        assertEquals( key( "q", "steel alloys", "fq", "journal:Steel", "fq", "title:corrosion" ),
+            key( "q", "steel alloys", "fq", "title:corrosion", "fq", "journal:Steel" ) );
+        // the same filter written differently
+        assertEquals( key( "q", "steel alloys", "fq", "journal:Steel" ),
+            key( "q", "steel alloys", "fq", "{!term f=journal}Steel" ) );
+    }
+
+    private ResultCacheKey key( String... nameValues ) throws Exception
+    {
+        ModifiableSolrParams params = new ModifiableSolrParams();
+        for ( int i = 0; i < nameValues.length; i += 2 )
+        {
+            params.add( nameValues[i], nameValues[i + 1] );
+        }
+        return testCore.getCore().withSearcher( searcher -> ResultCacheKey.create( params,
+            RerankPipeline.parseFilters( params, searcher ), searcher.getSchema(), tokenCache ) );
+    }
+}
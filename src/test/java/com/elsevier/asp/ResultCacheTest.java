@@ -0,0 +1,99 @@
+package com.elsevier.asp;
+
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.response.SolrQueryResponse;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Checks that the handler serves a repeated request, or another page of
+ * it, from the result cache, and reranks a request with another rerank
+ * parameter.
+ */
+public class ResultCacheTest
+    extends TestCase
+{
+    private TestCore testCore;
+
+    public ResultCacheTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ResultCacheTest.class );
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        testCore = new TestCore();
+        testCore.add( document( "a", "steel alloys resist corrosion at high temperature" ),
+            document( "b", "stainless steel contains chromium and nickel" ),
+            document( "c", "carbon steel corrosion in sea water" ),
+            document( "d", "nickel alloys for turbine blades" ) );
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        testCore.close();
+    }
+
+    public void testRepeatedRequestHits() throws Exception
+    {
+        SolrQueryResponse first = search( "q", "steel corrosion" );
+        assertTrue( ranked( first ) );
+        assertEquals( 1, testCore.getCache( "anseriniResultCache" ).size() );
+
+        SolrQueryResponse second = search( "q", "steel corrosion" );
+        assertFalse( ranked( second ) );
+        // SolrDocument has no equals
+        assertEquals( first.getValues().get( "docs" ).toString(), second.getValues().get( "docs" ).toString() );
+        // another page of the same ranking
+        SolrQueryResponse page = search( "q", "steel corrosion", "start", "1", "rows", "1" );
+        assertFalse( ranked( page ) );
+        assertEquals( ( (SolrDocumentList) first.getValues().get( "docs" ) ).get( 1 ).toString(),
+            ( (SolrDocumentList) page.getValues().get( "docs" ) ).get( 0 ).toString() );
+        assertEquals( 1, testCore.getCache( "anseriniResultCache" ).size() );
+    }
+
+    public void testChangedRerankParameterMisses() throws Exception
+    {
+        search( "q", "steel corrosion" );
+        assertTrue( ranked( search( "q", "steel corrosion", "rm3.fbTerms", "5" ) ) );
+        assertTrue( ranked( search( "q", "steel corrosion", "rtype", "ax", "ax.seed", "1" ) ) );
+        assertEquals( 3, testCore.getCache( "anseriniResultCache" ).size() );
+    }
+
+    private SolrQueryResponse search( String... nameValues ) throws Exception
+    {
+        String[] withTiming = new String[nameValues.length + 2];
+        System.arraycopy( nameValues, 0, withTiming, 0, nameValues.length );
+        withTiming[nameValues.length] = "debug";
+        withTiming[nameValues.length + 1] = "timing";
+        return testCore.request( "/anserini", withTiming );
+    }
+
+    // whether the request ran query A, rather than taking its ranking from the cache
+    private static boolean ranked( SolrQueryResponse resp )
+    {
+        NamedList<?> timing = (NamedList<?>) resp.getResponseHeader().get( "timing" );
+        assertNotNull( timing.get( "resultCache" ) );
+        return timing.get( "queryA.search" ) != null;
+    }
+
+    private static SolrInputDocument document( String id, String text )
+    {
+        SolrInputDocument document = new SolrInputDocument();
+        document.addField( "id", id );
+        document.addField( "para_id", id + "-p1" );
+        document.addField( "para_text_bm", text );
+        return document;
+    }
+}
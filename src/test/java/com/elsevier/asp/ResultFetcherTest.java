@@ -0,0 +1,111 @@
+package com.elsevier.asp;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.search.SolrIndexSearcher;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Checks that a page of results holds only the fields listed in fl, read
+ * from stored fields or docValues, in ranked order.
+ */
+public class ResultFetcherTest
+    extends TestCase
+{
+    private TestCore testCore;
+
+    public ResultFetcherTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ResultFetcherTest.class );
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        testCore = new TestCore();
+        testCore.add( document( "a", "Steel", "1111-1111", "steel alloys" ),
+            document( "b", "Corrosion", "2222-2222", "corrosion of carbon steel" ) );
+        testCore.add( document( "c", "Steel", "1111-1111", "stainless steel" ) );
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        testCore.close();
+    }
+
+    public void testFieldSubset() throws Exception
+    {
+        SolrDocumentList page = fetch( new String[] { "id", "issn" }, 0, 10 );
+        assertEquals( 3, page.size() );
+        assertEquals( 3, page.getNumFound() );
+        assertEquals( Arrays.asList( "c", "a", "b" ), Arrays.asList( page.get( 0 ).getFieldValue( "id" ),
+            page.get( 1 ).getFieldValue( "id" ), page.get( 2 ).getFieldValue( "id" ) ) );
+        for ( SolrDocument document : page )
+        {
+            // fl and the score, nothing else that is stored
+            assertEquals( Arrays.asList( "id", "issn", "score" ), Arrays.asList(
+                document.getFieldNames().toArray() ) );
+        }
+        // issn is not stored, it comes from docValues
+        assertEquals( "1111-1111", page.get( 0 ).getFieldValue( "issn" ) );
+        assertEquals( "2222-2222", page.get( 2 ).getFieldValue( "issn" ) );
+        assertEquals( 3.0F, page.get( 0 ).getFieldValue( "score" ) );
+    }
+
+    public void testPageWithParagraphText() throws Exception
+    {
+        SolrDocumentList page = fetch( new String[] { "journal", "para_text" }, 1, 1 );
+        assertEquals( 1, page.size() );
+        assertEquals( 1, page.getStart() );
+        SolrDocument document = page.get( 0 );
+        assertEquals( Arrays.asList( "journal", "para_text", "score" ), Arrays.asList(
+            document.getFieldNames().toArray() ) );
+        assertEquals( "Steel", document.getFieldValue( "journal" ) );
+        // para_text is the text field of the similarity
+        assertEquals( "steel alloys", ( (IndexableField) document.getFieldValue( "para_text" ) ).stringValue() );
+    }
+
+    private SolrDocumentList fetch( String[] fieldList, int start, int rows ) throws IOException
+    {
+        return testCore.getCore().withSearcher( searcher -> new ResultFetcher( searcher, fieldList,
+            "para_text_bm" ).fetch( ranking( searcher ), start, rows, 3 ) );
+    }
+
+    // c, a, b: from the second segment to the first
+    private static ScoreDoc[] ranking( SolrIndexSearcher searcher ) throws IOException
+    {
+        String[] ids = { "c", "a", "b" };
+        ScoreDoc[] documents = new ScoreDoc[ids.length];
+        for ( int i = 0; i < ids.length; i++ )
+        {
+            documents[i] = new ScoreDoc( searcher.getFirstMatch( new Term( "id", ids[i] ) ), ids.length - i );
+        }
+        return documents;
+    }
+
+    private static SolrInputDocument document( String id, String journal, String issn, String text )
+    {
+        SolrInputDocument document = new SolrInputDocument();
+        document.addField( "id", id );
+        document.addField( "journal", journal );
+        document.addField( "issn", issn );
+        document.addField( "para_text_bm", text );
+        return document;
+    }
+}
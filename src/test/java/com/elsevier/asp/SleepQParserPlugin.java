@@ -0,0 +1,78 @@
+package com.elsevier.asp;
+
+import java.io.IOException;
+
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Weight;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.search.QParser;
+import org.apache.solr.search.QParserPlugin;
+
+/**
+ * Parses {!sleep ms=...} into a query matching all documents that takes at
+ * least ms milliseconds to run, for tests that need a request to outlast
+ * its time budget.
+ */
+public class SleepQParserPlugin
+    extends QParserPlugin
+{
+    @Override
+    public QParser createParser( String qstr, SolrParams localParams, SolrParams params, SolrQueryRequest req )
+    {
+        return new QParser( qstr, localParams, params, req )
+        {
+            @Override
+            public Query parse()
+            {
+                return new SleepQuery( localParams.getLong( "ms", 0L ) );
+            }
+        };
+    }
+
+    private static class SleepQuery
+        extends Query
+    {
+        private final long millis;
+
+        private SleepQuery( long millis )
+        {
+            this.millis = millis;
+        }
+
+        @Override
+        public Weight createWeight( IndexSearcher searcher, ScoreMode scoreMode, float boost ) throws IOException
+        {
+            try
+            {
+                Thread.sleep( millis );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+            return new MatchAllDocsQuery().createWeight( searcher, scoreMode, boost );
+        }
+
+        @Override
+        public String toString( String field )
+        {
+            return "sleep(" + millis + ")";
+        }
+
+        @Override
+        public boolean equals( Object obj )
+        {
+            return sameClassAs( obj ) && millis == ( (SleepQuery) obj ).millis;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return classHash() * 31 + Long.hashCode( millis );
+        }
+    }
+}
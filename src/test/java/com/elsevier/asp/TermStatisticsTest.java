@@ -0,0 +1,143 @@
+package com.elsevier.asp;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.util.BytesRef;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Checks the document frequencies and common terms of the per-searcher term
+ * statistics, looked up by string or bytes, over one or more segments, and
+ * term ordinals.
+ */
+public class TermStatisticsTest
+    extends TestCase
+{
+    public TermStatisticsTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( TermStatisticsTest.class );
+    }
+
+    public void testCommonAcrossSegments() throws Exception
+    {
+        try ( ByteBuffersDirectory directory = new ByteBuffersDirectory() )
+        {
+            try ( IndexWriter writer = new IndexWriter( directory, new IndexWriterConfig() ) )
+            {
+                // two segments of ten documents: tin in 1 and 2 of them, lead in 1 and 1
+                for ( int segment = 0; segment < 2; segment++ )
+                {
+                    for ( int i = 0; i < 10; i++ )
+                    {
+                        Document document = new Document();
+                        document.add( new StringField( "id", segment + "-" + i, Field.Store.NO ) );
+                        document.add( new StringField( "text", "iron", Field.Store.NO ) );
+                        if ( i <= segment )
+                        {
+                            document.add( new StringField( "text", "tin", Field.Store.NO ) );
+                        }
+                        if ( i == 9 )
+                        {
+                            document.add( new StringField( "text", "lead", Field.Store.NO ) );
+                        }
+                        writer.addDocument( document );
+                    }
+                    writer.commit();
+                }
+            }
+            try ( DirectoryReader reader = DirectoryReader.open( directory ) )
+            {
+                assertEquals( 2, reader.leaves().size() );
+                TermStatistics statistics = TermStatistics.build( reader, "text" );
+                // 3 of 20 documents, though in no more than a tenth of the first segment
+                assertTrue( statistics.isCommon( "tin" ) );
+                // 2 of 20 is not more than a tenth
+                assertFalse( statistics.isCommon( "lead" ) );
+                assertTrue( statistics.isCommon( "iron" ) );
+                assertEquals( 2, statistics.getNumCommonTerms() );
+                assertEquals( 3L, statistics.docFreq( "tin" ) );
+            }
+            try ( IndexWriter writer = new IndexWriter( directory, new IndexWriterConfig() ) )
+            {
+                // deleted documents still count in document frequencies, but not in the ratio
+                for ( int i = 0; i < 3; i++ )
+                {
+                    writer.deleteDocuments( new Term( "id", "0-" + i ) );
+                }
+            }
+            try ( DirectoryReader reader = DirectoryReader.open( directory ) )
+            {
+                TermStatistics statistics = TermStatistics.build( reader, "text" );
+                assertEquals( 17, statistics.getNumDocs() );
+                assertTrue( statistics.isCommon( "lead" ) );
+                assertEquals( 2L, statistics.docFreq( "lead" ) );
+            }
+        }
+    }
+
+    public void testDictionary() throws Exception
+    {
+        try ( ByteBuffersDirectory directory = new ByteBuffersDirectory() )
+        {
+            try ( IndexWriter writer = new IndexWriter( directory, new IndexWriterConfig() ) )
+            {
+                for ( int i = 0; i < 20; i++ )
+                {
+                    Document document = new Document();
+                    document.add( new StringField( "text", "iron", Field.Store.NO ) );
+                    document.add( new StringField( "text", "nail" + i, Field.Store.NO ) );
+                    if ( i < 2 )
+                    {
+                        document.add( new StringField( "text", "zinc", Field.Store.NO ) );
+                    }
+                    writer.addDocument( document );
+                }
+            }
+            try ( DirectoryReader reader = DirectoryReader.open( directory ) )
+            {
+                TermStatistics statistics = TermStatistics.build( reader, "text" );
+                assertEquals( 20, statistics.getNumDocs() );
+                assertEquals( 20L, statistics.docFreq( "iron" ) );
+                assertEquals( 2L, statistics.docFreq( new BytesRef( "zinc" ) ) );
+                assertEquals( 1L, statistics.docFreq( "nail7" ) );
+                assertEquals( 0L, statistics.docFreq( "tin" ) );
+                assertEquals( 0L, statistics.docFreq( "nail" ) );
+                assertTrue( statistics.isCommon( "iron" ) );
+                assertTrue( statistics.isCommon( new BytesRef( "iron" ) ) );
+                assertFalse( statistics.isCommon( "zinc" ) );
+                assertFalse( statistics.isCommon( "tin" ) );
+                assertEquals( 1, statistics.getNumCommonTerms() );
+                assertTrue( statistics.ramBytesUsed() > 0 );
+
+                TermStatistics empty = TermStatistics.build( reader, "missing" );
+                assertEquals( 0, empty.getNumCommonTerms() );
+                assertEquals( 0L, empty.docFreq( "iron" ) );
+                assertFalse( empty.isCommon( "iron" ) );
+
+                TermOrdinals termOrdinals = new TermOrdinals();
+                assertEquals( 0, termOrdinals.ordinal( "zinc" ) );
+                assertEquals( 1, termOrdinals.ordinal( new BytesRef( "iron" ) ) );
+                assertEquals( 0, termOrdinals.ordinal( new BytesRef( "zinc" ) ) );
+                assertEquals( -1, termOrdinals.find( "tin" ) );
+                assertEquals( 1, termOrdinals.find( "iron" ) );
+                assertEquals( "zinc", termOrdinals.term( 0 ) );
+                assertEquals( new BytesRef( "iron" ), termOrdinals.bytes( 1 ) );
+                assertEquals( 2, termOrdinals.size() );
+            }
+        }
+    }
+}
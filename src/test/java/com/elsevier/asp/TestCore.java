@@ -0,0 +1,104 @@
+package com.elsevier.asp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.core.CoreContainer;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.request.LocalSolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.search.SolrCache;
+
+/**
+ * In-memory Solr core with the schema of src/test/resources/testcore, for
+ * tests that need query parsers or a SolrIndexSearcher.
+ */
+public class TestCore implements AutoCloseable
+{
+    private static final String CORE_NAME = "testcore";
+
+    private final Path home;
+    private final CoreContainer container;
+    private final EmbeddedSolrServer server;
+    private final SolrCore core;
+
+    public TestCore() throws IOException
+    {
+        home = Files.createTempDirectory( CORE_NAME );
+        Path conf = Files.createDirectories( home.resolve( CORE_NAME ).resolve( "conf" ) );
+        for ( String name : new String[] { "solrconfig.xml", "schema.xml" } )
+        {
+            try ( InputStream in = TestCore.class.getResourceAsStream( "/" + CORE_NAME + "/conf/" + name ) )
+            {
+                Files.copy( in, conf.resolve( name ) );
+            }
+        }
+        Files.write( home.resolve( "solr.xml" ), "<solr/>\n".getBytes( StandardCharsets.UTF_8 ) );
+        Files.write( home.resolve( CORE_NAME ).resolve( "core.properties" ),
+            ( "name=" + CORE_NAME + "\n" ).getBytes( StandardCharsets.UTF_8 ) );
+        container = CoreContainer.createAndLoad( home );
+        server = new EmbeddedSolrServer( container, CORE_NAME );
+        core = container.getCore( CORE_NAME );
+    }
+
+    public SolrCore getCore()
+    {
+        return core;
+    }
+
+    /** adds the documents and commits, each call writing a new segment */
+    public void add( SolrInputDocument... documents ) throws IOException, SolrServerException
+    {
+        for ( SolrInputDocument document : documents )
+        {
+            server.add( document );
+        }
+        server.commit();
+    }
+
+    /** runs a request through the handler registered under the name, failing on errors */
+    public SolrQueryResponse request( String handlerName, String... nameValues ) throws Exception
+    {
+        ModifiableSolrParams params = new ModifiableSolrParams();
+        for ( int i = 0; i < nameValues.length; i += 2 )
+        {
+            params.add( nameValues[i], nameValues[i + 1] );
+        }
+        SolrQueryResponse resp = new SolrQueryResponse();
+        try ( LocalSolrQueryRequest req = new LocalSolrQueryRequest( core, params ) )
+        {
+            core.execute( core.getRequestHandler( handlerName ), req, resp );
+        }
+        if ( resp.getException() != null )
+        {
+            throw resp.getException();
+        }
+        return resp;
+    }
+
+    /** the SolrCache of the current searcher declared under the name */
+    public SolrCache<?, ?> getCache( String cacheName ) throws IOException
+    {
+        return core.withSearcher( searcher -> searcher.getCache( cacheName ) );
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        core.close();
+        server.close();
+        try ( Stream<Path> paths = Files.walk( home ) )
+        {
+            paths.sorted( Comparator.reverseOrder() ).forEach( path -> path.toFile().delete() );
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.elsevier.asp;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.request.LocalSolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.search.SolrIndexSearcher;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Checks that an exported ranking reads its docValues in ranking order,
+ * across segments and back to lower docids, and that TREC runs leave out
+ * documents without a docno without leaving gaps in the ranks.
+ */
+public class TrecRunResponseWriterTest
+    extends TestCase
+{
+    private TestCore testCore;
+
+    public TrecRunResponseWriterTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( TrecRunResponseWriterTest.class );
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        testCore = new TestCore();
+        // two segments, b without a para_id
+        testCore.add( document( "a", "S1-p1" ), document( "b", null ) );
+        testCore.add( document( "c", "S2-p1" ), document( "d", "S2-p2" ) );
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        testCore.close();
+    }
+
+    public void testExportInRankingOrder() throws Exception
+    {
+        List<String> rows = testCore.getCore().withSearcher( searcher -> {
+            List<String> written = new ArrayList<String>();
+            new RankingExport( searcher, new String[] { "para_id", "id" }, ranking( searcher ) )
+                .forEach( ( rank, doc, values ) -> written.add( rank + " " + Arrays.toString( values ) + " "
+                    + doc.score ) );
+            return written;
+        } );
+        assertEquals( Arrays.asList( "1 [S2-p2, d] 4.0", "2 [null, b] 3.0", "3 [S1-p1, a] 2.0",
+            "4 [S2-p1, c] 1.0" ), rows );
+    }
+
+    public void testRanksWithoutGaps() throws Exception
+    {
+        ModifiableSolrParams params = new ModifiableSolrParams();
+        params.set( "trec.qid", "7" );
+        params.set( "trec.runTag", "test" );
+        String run = testCore.getCore().withSearcher( searcher -> {
+            SolrQueryResponse resp = new SolrQueryResponse();
+            resp.add( "docs", new RankingExport( searcher, new String[] { "para_id" }, ranking( searcher ) ) );
+            return write( params, resp );
+        } );
+        assertEquals( "7 Q0 S2-p2 1 4.0 test\n7 Q0 S1-p1 2 2.0 test\n7 Q0 S2-p1 3 1.0 test\n", run );
+    }
+
+    public void testBatchRanksWithoutGaps() throws Exception
+    {
+        String run = testCore.getCore().withSearcher( searcher -> {
+            ScoreDoc[] documents = ranking( searcher );
+            List<BatchResult> results = new ArrayList<BatchResult>();
+            results.add( new BatchResult( "q1", new Ranking( "", "", documents, 4, null ),
+                new RankingExport( searcher, new String[] { "para_id" }, documents ) ) );
+            results.add( BatchResult.failed( "q2", "failed" ) );
+            ScoreDoc[] reversed = { documents[3], documents[2], documents[1] };
+            results.add( new BatchResult( "q3", new Ranking( "", "", reversed, 3, null ),
+                new RankingExport( searcher, new String[] { "para_id" }, reversed ) ) );
+            SolrQueryResponse resp = new SolrQueryResponse();
+            resp.add( "results", results );
+            return write( new ModifiableSolrParams(), resp );
+        } );
+        assertEquals( "q1 Q0 S2-p2 1 4.0 anserini\nq1 Q0 S1-p1 2 2.0 anserini\nq1 Q0 S2-p1 3 1.0 anserini\n"
+            + "q3 Q0 S2-p1 1 1.0 anserini\nq3 Q0 S1-p1 2 2.0 anserini\n", run );
+    }
+
+    // d, b, a, c: from the second segment to the first and back
+    private static ScoreDoc[] ranking( SolrIndexSearcher searcher ) throws IOException
+    {
+        String[] ids = { "d", "b", "a", "c" };
+        ScoreDoc[] documents = new ScoreDoc[ids.length];
+        for ( int i = 0; i < ids.length; i++ )
+        {
+            documents[i] = new ScoreDoc( searcher.getFirstMatch( new Term( "id", ids[i] ) ), ids.length - i );
+        }
+        return documents;
+    }
+
+    private String write( ModifiableSolrParams params, SolrQueryResponse resp ) throws IOException
+    {
+        StringWriter writer = new StringWriter();
+        try ( LocalSolrQueryRequest req = new LocalSolrQueryRequest( testCore.getCore(), params ) )
+        {
+            new TrecRunResponseWriter().write( writer, req, resp );
+        }
+        return writer.toString();
+    }
+
+    private static SolrInputDocument document( String id, String paraId )
+    {
+        SolrInputDocument document = new SolrInputDocument();
+        document.addField( "id", id );
+        if ( paraId != null )
+        {
+            document.addField( "para_id", paraId );
+        }
+        return document;
+    }
+}